@@ -1,5 +1,8 @@
+import java.util.Arrays;
+
 /**
  * The Apartment class represents an apartment with its properties and rental information.
+ * The rental dates are kept as shared immutable Dates, so they are never copied.
  *
  * @author Daniel Shimon
  *  @version (Maman 12 )
@@ -14,16 +17,20 @@ public class Apartment {
     private Person _tenant;
     private Date _rentalStartDate;
     private Date _rentalEndDate;
+    private volatile ApartmentObserver[] _observers = NO_OBSERVERS;
+    private volatile ApartmentListener[] _listeners = NO_LISTENERS;
 
 
     // Constants
     private static final int DEFAULT_NO_OF_ROOMS = 3;
     private static final double DEFAULT_AREA = 80;
     private static final double DEFAULT_PRICE = 5000.0;
-    private static final int MIN_ROOMS = 1;
-    private static final double MIN_AREA = 1;
-    private static final double MIN_PRICE = 1;
-    private static final int MAX_RENT_DAYS_LEFT = 90;
+    static final int MIN_ROOMS = 1;
+    static final double MIN_AREA = 1;
+    static final double MIN_PRICE = 1;
+    public static final int MAX_RENT_DAYS_LEFT = 90; // Most days left in the lease for changeTenant to succeed
+    private static final ApartmentObserver[] NO_OBSERVERS = {};
+    private static final ApartmentListener[] NO_LISTENERS = {};
 
     //Constructor
     /**
@@ -43,24 +50,51 @@ public class Apartment {
     public Apartment(int noOfRooms,double area,double price, Person tenant, int startDay, int startMonth, int startYear, int endDay, int endMonth, int endYear) {
         if (noOfRooms >= MIN_ROOMS)
             _noOfRooms = noOfRooms;
-        else
+        else {
+            Metrics.ROOMS_DEFAULTED.increment();
             _noOfRooms = DEFAULT_NO_OF_ROOMS;
+        }
         if (area >= MIN_AREA)
             _area = area;
-        else
+        else {
+            Metrics.AREA_DEFAULTED.increment();
             _area = DEFAULT_AREA;
+        }
         if (price >= MIN_PRICE)
             _price = price;
-        else
+        else {
+            Metrics.PRICE_DEFAULTED.increment();
             _price = DEFAULT_PRICE;
+        }
         _tenant = new Person(tenant);
-        _rentalStartDate = new Date(startDay, startMonth, startYear);
-        _rentalEndDate = new Date(endDay, endMonth, endYear);
+        _rentalStartDate = Date.valueOf(startDay, startMonth, startYear);
+        _rentalEndDate = Date.valueOf(endDay, endMonth, endYear);
         if (_rentalEndDate.before(_rentalStartDate) || _rentalEndDate.equals(_rentalStartDate)) {
-            _rentalEndDate = _rentalStartDate.addYearsToDate(1);
+            Metrics.END_DATE_DEFAULTED.increment();
+            _rentalEndDate = Date.valueOf(_rentalStartDate.addYearsToDate(1));
         }
     }
 
+    /**
+     * Creates an apartment from values already checked, keeping the given tenant and dates
+     * instead of copying them. The caller must not keep or change the tenant.
+     *
+     * @param noOfRooms       the number of rooms, at least the minimum
+     * @param area            the area, at least the minimum
+     * @param price           the rental price, at least the minimum
+     * @param tenant          the tenant, owned by the apartment from now on
+     * @param rentalStartDate the rental start date, a shared immutable Date
+     * @param rentalEndDate   the rental end date, a shared immutable Date after the start date
+     */
+    Apartment(int noOfRooms, double area, double price, Person tenant, Date rentalStartDate, Date rentalEndDate) {
+        _noOfRooms = noOfRooms;
+        _area = area;
+        _price = price;
+        _tenant = tenant;
+        _rentalStartDate = rentalStartDate;
+        _rentalEndDate = rentalEndDate;
+    }
+
     //copy constructor
     /**
      * Copy constructor. Creates a new Apartment object that is a deep copy of the given Apartment.
@@ -68,12 +102,12 @@ public class Apartment {
      * @param other the Apartment to be copied
      */
     public Apartment(Apartment other) {
-        _noOfRooms = other.getNoOfRooms();
-        _area = other.getArea();
-        _price = other.getPrice();
-        _tenant = new Person(other.getTenant());
-        _rentalStartDate = new Date(other.getRentalStartDate());
-        _rentalEndDate = new Date(other.getRentalEndDate());
+        _noOfRooms = other._noOfRooms;
+        _area = other._area;
+        _price = other._price;
+        _tenant = new Person(other._tenant);
+        _rentalStartDate = other._rentalStartDate;
+        _rentalEndDate = other._rentalEndDate;
     }
 
 
@@ -121,22 +155,56 @@ public class Apartment {
 
 
     /**
-     * Gets the rental start date of the apartment.
+     * Gets the ID of the tenant without copying the tenant.
      *
-     * @return the rental start date
+     * @return the tenant's ID
+     */
+    public String getTenantId() {
+        return _tenant.getId();
+    }
+
+
+    /**
+     * Gets the name of the tenant without copying the tenant.
+     *
+     * @return the tenant's name
+     */
+    public String getTenantName() {
+        return _tenant.getName();
+    }
+
+
+    /**
+     * Gets the tenant's date of birth without copying the tenant.
+     *
+     * @return the tenant's date of birth, an immutable Date
+     */
+    public Date getTenantDateOfBirth() {
+        return _tenant.getDateOfBirth();
+    }
+
+
+    /**
+     * Gets the rental start date of the apartment. The Date is shared, not a copy as it
+     * used to be, so its set methods throw UnsupportedOperationException; to change a
+     * date, copy it with new Date(date) and pass the copy to setRentalStartDate.
+     *
+     * @return the rental start date, an immutable Date
      */
     public Date getRentalStartDate() {
-        return new Date(_rentalStartDate);
+        return _rentalStartDate;
     }
 
 
     /**
-     * Gets the rental end date of the apartment.
+     * Gets the rental end date of the apartment. The Date is shared, not a copy as it
+     * used to be, so its set methods throw UnsupportedOperationException; to change a
+     * date, copy it with new Date(date) and pass the copy to setRentalEndDate.
      *
-     * @return the rental end date
+     * @return the rental end date, an immutable Date
      */
     public Date getRentalEndDate() {
-        return new Date(_rentalEndDate);
+        return _rentalEndDate;
     }
 
     //setters
@@ -147,8 +215,14 @@ public class Apartment {
      * @param roomsToSet the new number of rooms
      */
     public void setNoOfRooms(int roomsToSet) {
-        if (roomsToSet >= MIN_ROOMS)
+        if (roomsToSet >= MIN_ROOMS) {
+            int oldRooms = _noOfRooms;
+            fireBeforeChange();
             _noOfRooms = roomsToSet;
+            fireAfterChange();
+            if (_listeners.length != 0)
+                fireEvent(ApartmentEvent.Type.NO_OF_ROOMS, oldRooms, roomsToSet);
+        }
     }
 
 
@@ -158,8 +232,14 @@ public class Apartment {
      * @param areaToSet the new area
      */
     public void setArea(int areaToSet) {
-        if (areaToSet >= MIN_AREA)
+        if (areaToSet >= MIN_AREA) {
+            double oldArea = _area;
+            fireBeforeChange();
             _area = areaToSet;
+            fireAfterChange();
+            if (_listeners.length != 0)
+                fireEvent(ApartmentEvent.Type.AREA, oldArea, _area);
+        }
     }
 
     /**
@@ -168,8 +248,14 @@ public class Apartment {
      * @param priceToSet the new price
      */
     public void setPrice(double priceToSet){
-        if (priceToSet >= MIN_PRICE)
+        if (priceToSet >= MIN_PRICE) {
+            double oldPrice = _price;
+            fireBeforeChange();
             _price = priceToSet;
+            fireAfterChange();
+            if (_listeners.length != 0)
+                fireEvent(ApartmentEvent.Type.PRICE, oldPrice, priceToSet);
+        }
     }
 
     /**
@@ -178,7 +264,12 @@ public class Apartment {
      * @param tenantToSet the new tenant
      */
     void setTenant(Person tenantToSet){
+        Person oldTenant = _tenant;
+        fireBeforeChange();
         _tenant = new Person(tenantToSet);
+        fireAfterChange();
+        if (_listeners.length != 0)
+            fireEvent(ApartmentEvent.Type.TENANT, oldTenant, new Person(_tenant)); // the old tenant is no longer ours
     }
 
 
@@ -188,8 +279,14 @@ public class Apartment {
      * @param startDateToSet the new rental start date
      */
     public  void setRentalStartDate(Date startDateToSet){
-    if(_rentalEndDate.after(startDateToSet))
-        _rentalStartDate = new Date(startDateToSet);
+    if(_rentalEndDate.after(startDateToSet)) {
+        Date oldStartDate = _rentalStartDate;
+        fireBeforeChange();
+        _rentalStartDate = Date.valueOf(startDateToSet);
+        fireAfterChange();
+        if (_listeners.length != 0)
+            fireEvent(ApartmentEvent.Type.RENTAL_START_DATE, oldStartDate, _rentalStartDate);
+    }
     }
 
 
@@ -199,8 +296,14 @@ public class Apartment {
      * @param endDateToSet the new rental end date
      */
     public void setRentalEndDate(Date endDateToSet){
-        if (endDateToSet.after(_rentalStartDate))
-            _rentalEndDate = new Date(endDateToSet);
+        if (endDateToSet.after(_rentalStartDate)) {
+            Date oldEndDate = _rentalEndDate;
+            fireBeforeChange();
+            _rentalEndDate = Date.valueOf(endDateToSet);
+            fireAfterChange();
+            if (_listeners.length != 0)
+                fireEvent(ApartmentEvent.Type.RENTAL_END_DATE, oldEndDate, _rentalEndDate);
+        }
     }
 
 
@@ -228,7 +331,12 @@ public class Apartment {
     public void extendRentalPeriod(int extendYear){
         if(extendYear > 0){
             extendYear = _rentalEndDate.getYear() + extendYear;
-            _rentalEndDate.setYear(extendYear);
+            Date oldEndDate = _rentalEndDate;
+            fireBeforeChange();
+            _rentalEndDate = _rentalEndDate.withYear(extendYear);
+            fireAfterChange();
+            if (_listeners.length != 0)
+                fireEvent(ApartmentEvent.Type.RENTAL_END_DATE, oldEndDate, _rentalEndDate);
         }
     }
 
@@ -240,6 +348,7 @@ public class Apartment {
      * @return the number of days remaining
      */
     public int daysLeft(Date dateToCheck) {
+        Metrics.DAYS_LEFT_CALLS.incrementSampled();
         if (dateToCheck.after(_rentalEndDate))
             return -1; // Date is after the end of the lease
         return _rentalEndDate.difference(dateToCheck);
@@ -255,33 +364,135 @@ public class Apartment {
      * @return true if the change was successful, false otherwise
      */
     public boolean changeTenant(Date startDate, Person newPerson, double newPrice) {
-        if (_tenant.getDateOfBirth().before(newPerson.getDateOfBirth()) &&
-        _price <= newPrice &&
-        daysLeft(startDate) <= MAX_RENT_DAYS_LEFT)
-        {
-            _tenant = new Person(newPerson);
-            _price = newPrice;
-            _rentalStartDate = new Date(startDate);
-            _rentalEndDate = new Date(startDate.addYearsToDate(1));
-            return true;
-        }
+        if (!_tenant.getDateOfBirth().before(newPerson.getDateOfBirth()))
+            return reject(Metrics.TENANT_REJECTED_AGE);
+        if (!(_price <= newPrice))
+            return reject(Metrics.TENANT_REJECTED_PRICE);
+        if (daysLeft(startDate) > MAX_RENT_DAYS_LEFT)
+            return reject(Metrics.TENANT_REJECTED_WINDOW);
+        long start = Metrics.startTimer();
+        ApartmentState oldState = _listeners.length == 0 ? null : new ApartmentState(this);
+        fireBeforeChange();
+        _tenant = new Person(newPerson);
+        _price = newPrice;
+        _rentalStartDate = Date.valueOf(startDate);
+        _rentalEndDate = Date.valueOf(startDate.addYearsToDate(1));
+        fireAfterChange();
+        if (oldState != null)
+            fireEvent(ApartmentEvent.Type.TENANT_CHANGED, oldState, new ApartmentState(this));
+        Metrics.stopTimer(Metrics.CHANGE_TENANT_LATENCY, start);
+        Metrics.TENANT_CHANGED.increment();
+        return true;
+    }
+
+    // Counts a rejected tenant change under the rule that rejected it
+    private static boolean reject(Metrics.Counter reason) {
+        reason.increment();
         return false;
     }
 
+    /**
+     * Starts telling the given observer about every change to this apartment.
+     *
+     * @param observer the observer to add
+     */
+    public synchronized void addObserver(ApartmentObserver observer) {
+        ApartmentObserver[] observers = Arrays.copyOf(_observers, _observers.length + 1);
+        observers[observers.length - 1] = observer;
+        _observers = observers;
+    }
+
+
+    /**
+     * Stops telling the given observer about changes to this apartment.
+     *
+     * @param observer the observer to remove
+     */
+    public synchronized void removeObserver(ApartmentObserver observer) {
+        ApartmentObserver[] observers = _observers;
+        for (int i = 0; i < observers.length; i++) {
+            if (observers[i] == observer) {
+                ApartmentObserver[] rest = new ApartmentObserver[observers.length - 1];
+                System.arraycopy(observers, 0, rest, 0, i);
+                System.arraycopy(observers, i + 1, rest, i, rest.length - i);
+                _observers = rest;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts sending the given listener an event for every change to this apartment.
+     * While an apartment has no listeners, its changes create no events.
+     *
+     * @param listener the listener to add
+     */
+    public synchronized void addListener(ApartmentListener listener) {
+        ApartmentListener[] listeners = Arrays.copyOf(_listeners, _listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        _listeners = listeners;
+    }
+
+    /**
+     * Stops sending events to the given listener.
+     *
+     * @param listener the listener to remove
+     */
+    public synchronized void removeListener(ApartmentListener listener) {
+        ApartmentListener[] listeners = _listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                ApartmentListener[] rest = new ApartmentListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, rest, 0, i);
+                System.arraycopy(listeners, i + 1, rest, i, rest.length - i);
+                _listeners = rest;
+                return;
+            }
+        }
+    }
+
+    // Sends the listeners an event for a change that was just made
+    private <T> void fireEvent(ApartmentEvent.Type<T> type, T oldValue, T newValue) {
+        ApartmentEvent<T> event = new ApartmentEvent<>(this, type, oldValue, newValue);
+        for (ApartmentListener listener : _listeners)
+            listener.apartmentChanged(event);
+    }
+
+    // Tells the observers that this apartment is about to change
+    private void fireBeforeChange() {
+        for (ApartmentObserver observer : _observers)
+            observer.beforeChange(this);
+    }
+
+    // Tells the observers that this apartment has changed
+    private void fireAfterChange() {
+        for (ApartmentObserver observer : _observers)
+            observer.afterChange(this);
+    }
+
     /**
      * Returns a string representation of the apartment.
      *
      * @return the string representation
      */
     public String toString () {
-        return "Number of rooms: " + this.getNoOfRooms() +
-                "\nArea: " + this.getArea() +
-                "\nPrice: " + this.getPrice() + " NIS" +
-                "\nTenant name: " + _tenant.getName() +
-                "\nRental start date: " + this.getRentalStartDate() +
-                "\nRental end date: " + this.getRentalEndDate();
-
+        return appendTo(new StringBuilder(160)).toString();
+    }
 
+    /**
+     * Appends the string representation of the apartment to the builder, without creating strings.
+     *
+     * @param builder the builder to append to
+     * @return the builder
+     */
+    public StringBuilder appendTo (StringBuilder builder) {
+        builder.append("Number of rooms: ").append(_noOfRooms)
+                .append("\nArea: ").append(_area)
+                .append("\nPrice: ").append(_price).append(" NIS")
+                .append("\nTenant name: ").append(_tenant.getName())
+                .append("\nRental start date: ");
+        _rentalStartDate.appendTo(builder).append("\nRental end date: ");
+        return _rentalEndDate.appendTo(builder);
     }
 }
 
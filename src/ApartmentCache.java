@@ -0,0 +1,313 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ApartmentCache class remembers the tenant and the days left of the apartments
+ * that are looked up most, so a hot apartment is not read again on every request. It
+ * holds at most a fixed number of apartments, and when full evicts one that was used
+ * long ago. The days left are kept for one day per apartment, so a lookup for another
+ * day, such as the day after a rollover, replaces them.
+ * Only the apartments added to the cache are cached. The cache observes them, so any
+ * change to an apartment, including setTenant, changeTenant, setRentalEndDate and
+ * extendRentalPeriod, drops what the cache held for it.
+ * <p>
+ * A lookup that finds its values takes no lock: the entries are in a ConcurrentHashMap,
+ * and an entry's values are one immutable object that a change of the apartment replaces.
+ * A value read from the apartment is only stored if no change replaced the values in the
+ * meantime, so a lookup racing a change never leaves stale values behind. Recency is
+ * sampled rather than kept in order: a lookup stamps its entry with a clock that ticks
+ * once per new entry, writing the stamp only when it changed, and a full cache evicts the
+ * oldest of a few entries picked at random. Only adding and evicting entries take a lock.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentCache implements ApartmentObserver {
+
+    // Constants
+    private static final int NO_DAY = Integer.MIN_VALUE; // Epoch day of values with no days left cached
+    private static final int SAMPLES = 8;                // Entries compared to pick one to evict
+
+    // Instance variables
+    private final int _capacity;
+    private final ConcurrentHashMap<Apartment, Boolean> _watched = new ConcurrentHashMap<>(); // Apartment compares by identity
+    private final ConcurrentHashMap<Apartment, Entry> _entries = new ConcurrentHashMap<>();
+    private final ReentrantLock _lock = new ReentrantLock(); // guards _slots and _count
+    private final Entry[] _slots;    // the entries, for sampling
+    private int _count;
+    private volatile int _clock;     // ticks once per new entry
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _invalidations = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity the most apartments the cache holds at once
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public ApartmentCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        _capacity = capacity;
+        _slots = new Entry[capacity];
+    }
+
+    /**
+     * Starts caching the given apartment.
+     *
+     * @param apartment the apartment to add
+     * @return true if the apartment was added, false if it was already in the cache
+     */
+    public boolean add(Apartment apartment) {
+        if (_watched.putIfAbsent(apartment, Boolean.TRUE) != null)
+            return false;
+        apartment.addObserver(this);
+        afterChange(apartment); // drops values cached before the cache observed the apartment
+        return true;
+    }
+
+    /**
+     * Stops caching the given apartment and drops what the cache held for it.
+     *
+     * @param apartment the apartment to remove
+     * @return true if the apartment was removed, false if it was not in the cache
+     */
+    public boolean remove(Apartment apartment) {
+        if (_watched.remove(apartment) == null)
+            return false;
+        apartment.removeObserver(this);
+        drop(apartment);
+        return true;
+    }
+
+    /**
+     * Gets a copy of the tenant of the apartment.
+     *
+     * @param apartment the apartment
+     * @return a copy of the apartment's tenant
+     */
+    public Person getTenant(Apartment apartment) {
+        Entry entry = entry(apartment);
+        if (entry == null)
+            return apartment.getTenant();
+        Values values = entry._values.get();
+        if (values._tenant != null) {
+            _hits.increment();
+            return new Person(values._tenant);
+        }
+        _misses.increment();
+        Person tenant = apartment.getTenant();
+        entry._values.compareAndSet(values, new Values(tenant, values._day, values._daysLeft));
+        return new Person(tenant);
+    }
+
+    /**
+     * Gets the number of days left in the apartment's rental period on the given date,
+     * as {@link Apartment#daysLeft(Date)} does.
+     *
+     * @param apartment   the apartment
+     * @param dateToCheck the date to check
+     * @return the number of days remaining, -1 if the date is after the end of the lease
+     */
+    public int daysLeft(Apartment apartment, Date dateToCheck) {
+        Entry entry = entry(apartment);
+        if (entry == null)
+            return apartment.daysLeft(dateToCheck);
+        int day = dateToCheck.getEpochDay();
+        Values values = entry._values.get();
+        if (values._day == day) {
+            _hits.increment();
+            return values._daysLeft;
+        }
+        _misses.increment();
+        int daysLeft = apartment.daysLeft(dateToCheck);
+        entry._values.compareAndSet(values, new Values(values._tenant, day, daysLeft));
+        return daysLeft;
+    }
+
+    /**
+     * Drops everything the cache holds, the apartments stay in the cache.
+     */
+    public void clear() {
+        _lock.lock();
+        try {
+            for (int i = 0; i < _count; i++) {
+                _entries.remove(_slots[i]._apartment);
+                _slots[i] = null;
+            }
+            _count = 0;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of apartments whose values the cache holds.
+     *
+     * @return the number of cached apartments
+     */
+    public int size() {
+        _lock.lock();
+        try {
+            return _count;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return _hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups of added apartments that had to read the apartment.
+     * Lookups of apartments not added to the cache are not counted.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return _misses.sum();
+    }
+
+    /**
+     * Gets the number of apartments evicted to keep the cache within its capacity.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return _evictions.sum();
+    }
+
+    /**
+     * Gets the number of times a change to an apartment dropped what the cache held for it.
+     *
+     * @return the number of invalidations
+     */
+    public long getInvalidationCount() {
+        return _invalidations.sum();
+    }
+
+    /**
+     * Does nothing, the apartment's values are dropped once the change is done.
+     *
+     * @param apartment the apartment about to change
+     */
+    public void beforeChange(Apartment apartment) {
+    }
+
+    /**
+     * Drops what the cache held for the apartment. Takes no lock.
+     *
+     * @param apartment the apartment that changed
+     */
+    public void afterChange(Apartment apartment) {
+        Entry entry = _entries.get(apartment);
+        if (entry == null)
+            return;
+        // A new object every time, so a lookup that read the values before the change fails its compareAndSet
+        Values old = entry._values.getAndSet(new Values(null, NO_DAY, 0));
+        if (old._tenant != null || old._day != NO_DAY)
+            _invalidations.increment();
+    }
+
+    // The apartment's entry, stamped as used and created if needed, or null if the apartment is not cached
+    private Entry entry(Apartment apartment) {
+        Entry entry = _entries.get(apartment);
+        if (entry == null) {
+            if (!_watched.containsKey(apartment))
+                return null;
+            entry = insert(apartment);
+            if (!_watched.containsKey(apartment)) // removed meanwhile, remove may have missed the new entry
+                drop(apartment);
+        }
+        int now = _clock;
+        if (entry._lastUsed != now)
+            entry._lastUsed = now;
+        return entry;
+    }
+
+    // Puts a new entry for the apartment, evicting one if the cache is full, or gives the one another thread put
+    private Entry insert(Apartment apartment) {
+        _lock.lock();
+        try {
+            Entry entry = _entries.get(apartment);
+            if (entry != null)
+                return entry;
+            int slot = _count < _capacity ? _count++ : evict();
+            entry = new Entry(apartment, slot);
+            _slots[slot] = entry;
+            _entries.put(apartment, entry);
+            _clock = _clock + 1;
+            return entry;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    // Removes the oldest of a few random entries, called with the lock held on a full cache, gives its slot
+    private int evict() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Entry victim = _slots[random.nextInt(_count)];
+        for (int i = 1; i < SAMPLES; i++) {
+            Entry candidate = _slots[random.nextInt(_count)];
+            if (candidate._lastUsed - victim._lastUsed < 0)
+                victim = candidate;
+        }
+        _entries.remove(victim._apartment);
+        _evictions.increment();
+        return victim._slot;
+    }
+
+    // Removes the apartment's entry, moving the last entry into its slot
+    private void drop(Apartment apartment) {
+        _lock.lock();
+        try {
+            Entry entry = _entries.remove(apartment);
+            if (entry == null)
+                return;
+            Entry last = _slots[--_count];
+            _slots[entry._slot] = last;
+            last._slot = entry._slot;
+            _slots[_count] = null;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    // What the cache holds for one apartment
+    private static final class Entry {
+        private final Apartment _apartment;
+        private final AtomicReference<Values> _values = new AtomicReference<>(new Values(null, NO_DAY, 0));
+        private int _slot;          // index in _slots, guarded by the lock
+        private int _lastUsed;      // clock at the last lookup, written without a lock
+
+        private Entry(Apartment apartment, int slot) {
+            _apartment = apartment;
+            _slot = slot;
+        }
+    }
+
+    // The cached values of one apartment, replaced as a whole
+    private static final class Values {
+        private final Person _tenant;   // null until looked up
+        private final int _day;         // epoch day the days left were computed for
+        private final int _daysLeft;
+
+        private Values(Person tenant, int day, int daysLeft) {
+            _tenant = tenant;
+            _day = day;
+            _daysLeft = daysLeft;
+        }
+    }
+}
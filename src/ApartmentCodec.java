@@ -0,0 +1,313 @@
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ApartmentCodec class writes apartments to and reads them from a ByteBuffer in a
+ * compact binary form, one record after another, so records can be streamed through a
+ * buffer that is refilled from a channel.
+ * <p>
+ * A record is laid out as follows. Varints are unsigned LEB128, 7 bits per byte.
+ * <pre>
+ * varint  length of the rest of the record
+ * double  price
+ * double  area
+ * int     tenant ID as a 9 digit number, or -1 if the ID is not made of digits
+ * varint  number of rooms
+ * varint  rental start date, epoch day
+ * varint  rental end date, epoch day
+ * varint  tenant's date of birth, epoch day
+ * varint  length of the tenant's name in bytes, then the name in UTF-8
+ * [varint length of the tenant's ID in bytes, then the ID in UTF-8, only if the packed ID is -1]
+ * </pre>
+ * The fixed width fields come first, so the peek methods can read them without decoding
+ * the record, and skip jumps over a record using only its length. Neither creates objects.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentCodec {
+
+    // Constants
+    private static final int UNPACKED_ID = -1;      // Packed ID of an ID that is not 9 digits
+    private static final int PRICE_OFFSET = 0;      // Offsets of the fixed fields after the length
+    private static final int AREA_OFFSET = 8;
+    private static final int TENANT_ID_OFFSET = 16;
+    private static final int VARINTS_OFFSET = 20;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_MORE = 0x80;
+    private static final int MAX_VARINT_SIZE = 5;
+
+    /**
+     * Computes the number of bytes encode will write for the apartment.
+     *
+     * @param apartment the apartment to measure
+     * @return the size of the record, length prefix included
+     */
+    public static int encodedSize(Apartment apartment) {
+        int payload = payloadSize(apartment);
+        return varintSize(payload) + payload;
+    }
+
+    /**
+     * Writes the apartment as one record at the buffer's position.
+     *
+     * @param apartment the apartment to write
+     * @param buffer    the buffer to write into
+     * @throws BufferOverflowException if the buffer does not have room for the record
+     */
+    public static void encode(Apartment apartment, ByteBuffer buffer) {
+        int payload = payloadSize(apartment);
+        if (buffer.remaining() < varintSize(payload) + payload)
+            throw new BufferOverflowException();
+        String id = apartment.getTenantId();
+        int packedId = Person.packId(id);
+        putVarint(buffer, payload);
+        buffer.putDouble(apartment.getPrice());
+        buffer.putDouble(apartment.getArea());
+        buffer.putInt(packedId);
+        putVarint(buffer, apartment.getNoOfRooms());
+        putVarint(buffer, apartment.getRentalStartDate().getEpochDay());
+        putVarint(buffer, apartment.getRentalEndDate().getEpochDay());
+        putVarint(buffer, apartment.getTenantDateOfBirth().getEpochDay());
+        putString(buffer, apartment.getTenantName());
+        if (packedId == UNPACKED_ID)
+            putString(buffer, id);
+    }
+
+    /**
+     * Checks if a whole record is available at the buffer's position.
+     *
+     * @param buffer the buffer to look at
+     * @return true if decode or skip can read the next record without running out of bytes
+     */
+    public static boolean hasRecord(ByteBuffer buffer) {
+        int position = buffer.position();
+        int length = 0;
+        for (int shift = 0, i = 0; i < MAX_VARINT_SIZE; i++, shift += 7) {
+            if (position + i >= buffer.limit())
+                return false;
+            int b = buffer.get(position + i);
+            length |= (b & VARINT_MASK) << shift;
+            if ((b & VARINT_MORE) == 0)
+                return buffer.limit() - position - i - 1 >= length;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the record at the buffer's position and moves past it.
+     *
+     * @param buffer the buffer to read from
+     * @return a new apartment holding the record
+     * @throws BufferUnderflowException if the buffer does not hold a whole record
+     */
+    public static Apartment decode(ByteBuffer buffer) {
+        if (!hasRecord(buffer))
+            throw new BufferUnderflowException();
+        getVarint(buffer);
+        double price = buffer.getDouble();
+        double area = buffer.getDouble();
+        int packedId = buffer.getInt();
+        int noOfRooms = getVarint(buffer);
+        Date start = Date.ofEpochDay(getVarint(buffer));
+        Date end = Date.ofEpochDay(getVarint(buffer));
+        Date birth = Date.ofEpochDay(getVarint(buffer));
+        String name = getString(buffer);
+        String id = packedId == UNPACKED_ID ? getString(buffer) : Person.unpackId(packedId);
+        Person tenant = new Person(name, birth.getDay(), birth.getMonth(), birth.getYear(), id);
+        return new Apartment(noOfRooms, area, price, tenant,
+                start.getDay(), start.getMonth(), start.getYear(), end.getDay(), end.getMonth(), end.getYear());
+    }
+
+    /**
+     * Moves the buffer's position past the record at it, without reading the record.
+     *
+     * @param buffer the buffer to move
+     * @throws BufferUnderflowException if the buffer does not hold a whole record
+     */
+    public static void skip(ByteBuffer buffer) {
+        if (!hasRecord(buffer))
+            throw new BufferUnderflowException();
+        int length = getVarint(buffer);
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Reads the price of the record at the buffer's position, without moving.
+     *
+     * @param buffer the buffer positioned at a record
+     * @return the price
+     */
+    public static double peekPrice(ByteBuffer buffer) {
+        return buffer.getDouble(payloadStart(buffer) + PRICE_OFFSET);
+    }
+
+    /**
+     * Reads the area of the record at the buffer's position, without moving.
+     *
+     * @param buffer the buffer positioned at a record
+     * @return the area
+     */
+    public static double peekArea(ByteBuffer buffer) {
+        return buffer.getDouble(payloadStart(buffer) + AREA_OFFSET);
+    }
+
+    /**
+     * Reads the packed tenant ID of the record at the buffer's position, without moving.
+     *
+     * @param buffer the buffer positioned at a record
+     * @return the tenant ID as a number, or -1 if the ID is not made of digits
+     */
+    public static int peekPackedTenantId(ByteBuffer buffer) {
+        return buffer.getInt(payloadStart(buffer) + TENANT_ID_OFFSET);
+    }
+
+    /**
+     * Reads the number of rooms of the record at the buffer's position, without moving.
+     *
+     * @param buffer the buffer positioned at a record
+     * @return the number of rooms
+     */
+    public static int peekNoOfRooms(ByteBuffer buffer) {
+        return getVarintAt(buffer, payloadStart(buffer) + VARINTS_OFFSET, 0);
+    }
+
+    /**
+     * Reads the rental end date of the record at the buffer's position, without moving.
+     *
+     * @param buffer the buffer positioned at a record
+     * @return the epoch day of the rental end date
+     */
+    public static int peekRentalEndDay(ByteBuffer buffer) {
+        return getVarintAt(buffer, payloadStart(buffer) + VARINTS_OFFSET, 2);
+    }
+
+    // Number of bytes after the length prefix
+    private static int payloadSize(Apartment apartment) {
+        String id = apartment.getTenantId();
+        int size = VARINTS_OFFSET
+                + varintSize(apartment.getNoOfRooms())
+                + varintSize(apartment.getRentalStartDate().getEpochDay())
+                + varintSize(apartment.getRentalEndDate().getEpochDay())
+                + varintSize(apartment.getTenantDateOfBirth().getEpochDay())
+                + stringSize(apartment.getTenantName());
+        if (Person.packId(id) == UNPACKED_ID)
+            size += stringSize(id);
+        return size;
+    }
+
+    // Index of the first byte after the length prefix of the record at the buffer's position
+    private static int payloadStart(ByteBuffer buffer) {
+        int index = buffer.position();
+        while ((buffer.get(index) & VARINT_MORE) != 0)
+            index++;
+        return index + 1;
+    }
+
+    // Reads the varint that comes after the given number of varints starting at index
+    private static int getVarintAt(ByteBuffer buffer, int index, int skip) {
+        for (int i = 0; i < skip; i++) {
+            while ((buffer.get(index) & VARINT_MORE) != 0)
+                index++;
+            index++;
+        }
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = buffer.get(index++);
+            value |= (b & VARINT_MASK) << shift;
+            if ((b & VARINT_MORE) == 0)
+                return value;
+        }
+    }
+
+    // Number of bytes of the varint
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    // Writes a varint
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~VARINT_MASK) != 0) {
+            buffer.put((byte) ((value & VARINT_MASK) | VARINT_MORE));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Reads a varint
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = buffer.get();
+            value |= (b & VARINT_MASK) << shift;
+            if ((b & VARINT_MORE) == 0)
+                return value;
+        }
+    }
+
+    // Number of bytes of the string with its length prefix
+    private static int stringSize(String text) {
+        int bytes = utf8Length(text);
+        return varintSize(bytes) + bytes;
+    }
+
+    // Number of bytes of the string in UTF-8, counted without encoding it
+    private static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80)
+                bytes += 1;
+            else if (c < 0x800)
+                bytes += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c))
+                bytes += 1; // a lone surrogate is written as '?', as in String.getBytes
+            else
+                bytes += 3;
+        }
+        return bytes;
+    }
+
+    // Writes the string with its length prefix, encoding it straight into the buffer
+    private static void putString(ByteBuffer buffer, String text) {
+        putVarint(buffer, utf8Length(text));
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    // Reads a string with its length prefix
+    private static String getString(ByteBuffer buffer) {
+        int length = getVarint(buffer);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * An ApartmentEvent describes one change to an apartment: which apartment, what kind of
+ * change, and the value before and after it. The kind of change fixes the type of the
+ * values, so a listener that checks the type gets typed values through {@link #as(Type)}.
+ * The values never share mutable state with the apartment: dates are immutable, tenants
+ * are copies, and a change of tenant carries immutable snapshots of the whole apartment.
+ *
+ * @param <T> the type of the old and new values
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public final class ApartmentEvent<T> {
+
+    /**
+     * A kind of change, and the type of the values an event of that kind carries.
+     *
+     * @param <T> the type of the old and new values
+     */
+    public static final class Type<T> {
+
+        /** setNoOfRooms changed the number of rooms. */
+        public static final Type<Integer> NO_OF_ROOMS = new Type<>("NO_OF_ROOMS", Integer.class);
+        /** setArea changed the area. */
+        public static final Type<Double> AREA = new Type<>("AREA", Double.class);
+        /** setPrice changed the price. */
+        public static final Type<Double> PRICE = new Type<>("PRICE", Double.class);
+        /** setTenant replaced the tenant. */
+        public static final Type<Person> TENANT = new Type<>("TENANT", Person.class);
+        /** setRentalStartDate changed the rental start date. */
+        public static final Type<Date> RENTAL_START_DATE = new Type<>("RENTAL_START_DATE", Date.class);
+        /** setRentalEndDate or extendRentalPeriod changed the rental end date. */
+        public static final Type<Date> RENTAL_END_DATE = new Type<>("RENTAL_END_DATE", Date.class);
+        /** changeTenant replaced the tenant, the price and the rental period at once. */
+        public static final Type<ApartmentState> TENANT_CHANGED = new Type<>("TENANT_CHANGED", ApartmentState.class);
+
+        // Instance variables
+        private final String _name;
+        private final Class<T> _valueType;
+
+        // Only the constants above are created
+        private Type(String name, Class<T> valueType) {
+            _name = name;
+            _valueType = valueType;
+        }
+
+        /**
+         * Gets the type of the values of this kind of change.
+         *
+         * @return the class of the old and new values
+         */
+        public Class<T> getValueType() {
+            return _valueType;
+        }
+
+        /**
+         * Returns the name of this kind of change.
+         *
+         * @return the name
+         */
+        public String toString() {
+            return _name;
+        }
+    }
+
+    // Instance variables
+    private final Apartment _apartment;
+    private final Type<T> _type;
+    private final T _oldValue;
+    private final T _newValue;
+
+    /**
+     * Creates an event.
+     *
+     * @param apartment the apartment that changed
+     * @param type      the kind of change
+     * @param oldValue  the value before the change
+     * @param newValue  the value after the change
+     */
+    public ApartmentEvent(Apartment apartment, Type<T> type, T oldValue, T newValue) {
+        _apartment = apartment;
+        _type = type;
+        _oldValue = oldValue;
+        _newValue = newValue;
+    }
+
+    /**
+     * Gets the apartment that changed. It may have changed again since.
+     *
+     * @return the apartment
+     */
+    public Apartment getApartment() {
+        return _apartment;
+    }
+
+    /**
+     * Gets the kind of change.
+     *
+     * @return the kind of change
+     */
+    public Type<T> getType() {
+        return _type;
+    }
+
+    /**
+     * Gets the value before the change.
+     *
+     * @return the old value
+     */
+    public T getOldValue() {
+        return _oldValue;
+    }
+
+    /**
+     * Gets the value after the change.
+     *
+     * @return the new value
+     */
+    public T getNewValue() {
+        return _newValue;
+    }
+
+    /**
+     * Gives this event the type of values of the given kind of change.
+     *
+     * @param type the kind of change this event is expected to be
+     * @param <U>  the type of the values of that kind
+     * @return this event, typed
+     * @throws ClassCastException if this event is of another kind
+     */
+    @SuppressWarnings("unchecked")
+    public <U> ApartmentEvent<U> as(Type<U> type) {
+        if (_type != type)
+            throw new ClassCastException("Event of type " + _type + " is not of type " + type);
+        return (ApartmentEvent<U>) this;
+    }
+
+    /**
+     * Returns a string representation of the event.
+     *
+     * @return the kind of change and the old and new values
+     */
+    public String toString() {
+        return _type + ": " + _oldValue + " -> " + _newValue;
+    }
+}
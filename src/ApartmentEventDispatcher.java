@@ -0,0 +1,204 @@
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ApartmentEventDispatcher class moves apartment events off the thread that changed
+ * the apartment. Added to an apartment as a listener, it only puts each event in a bounded
+ * ring buffer, and a worker thread of its own hands the events to its listeners in batches.
+ * Publishing never waits: when the buffer is full the event is dropped and counted, so a
+ * slow listener loses events instead of slowing down the apartments.
+ * Any number of threads may publish. Slots are claimed by compare and set on the tail
+ * sequence, and the worker is the only thread that reads or frees them. Closing swaps a
+ * closed mark into the tail, so every event is either claimed before the close, and then
+ * delivered, or dropped and counted.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public final class ApartmentEventDispatcher implements ApartmentListener, Closeable {
+
+    // Constants
+    private static final int MAX_BATCH = 256;           // Most events handed to the listeners at once
+    private static final long IDLE_PARK_NANOS = 1_000_000; // Longest sleep of an idle worker between checks
+    private static final long CLOSED = Long.MIN_VALUE;  // Tail of a closed dispatcher, no slot can be claimed after it
+
+    // Instance variables
+    private final AtomicReferenceArray<ApartmentEvent<?>> _slots;
+    private final int _mask;
+    private final AtomicLong _tail = new AtomicLong();  // sequence of the next slot to claim, or CLOSED
+    private volatile long _end;                         // tail when the dispatcher was closed
+    private volatile long _head;                        // sequence of the next slot the worker reads
+    private volatile long _delivered;                   // events handed to the listeners so far
+    private volatile boolean _waiting;                  // the worker is about to park
+    private volatile boolean _running = true;
+    private final LongAdder _dropped = new LongAdder();
+    private final List<ApartmentListener> _listeners = new CopyOnWriteArrayList<>();
+    private final Thread _worker;
+
+    /**
+     * Creates a dispatcher and starts its worker thread.
+     *
+     * @param capacity the most events waiting at once, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public ApartmentEventDispatcher(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        _slots = new AtomicReferenceArray<>(size);
+        _mask = size - 1;
+        _worker = new Thread(this::dispatch, "apartment-event-dispatcher");
+        _worker.setDaemon(true);
+        _worker.start();
+    }
+
+    /**
+     * Adds a listener to be called on the worker thread.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(ApartmentListener listener) {
+        _listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(ApartmentListener listener) {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Puts the event in the buffer for the worker, or drops it if the buffer is full
+     * or the dispatcher is closed. Never waits.
+     *
+     * @param event the change
+     */
+    public void apartmentChanged(ApartmentEvent<?> event) {
+        long sequence;
+        do {
+            sequence = _tail.get();
+            if (sequence == CLOSED || sequence - _head > _mask) {
+                _dropped.increment();
+                return;
+            }
+        } while (!_tail.compareAndSet(sequence, sequence + 1));
+        _slots.set((int) sequence & _mask, event);
+        if (_waiting)
+            LockSupport.unpark(_worker);
+    }
+
+    /**
+     * Gets the number of events dropped because the buffer was full or the dispatcher was closed.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedCount() {
+        return _dropped.sum();
+    }
+
+    /**
+     * Gets the number of events handed to the listeners so far.
+     *
+     * @return the number of delivered events
+     */
+    public long getDeliveredCount() {
+        return _delivered;
+    }
+
+    /**
+     * Waits until every event accepted before this call has been handed to the listeners.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public void flush() throws InterruptedException {
+        long target = _tail.get();
+        while ((target == CLOSED || _delivered < target) && _worker.isAlive()) { // once closed, until the worker ends
+            LockSupport.unpark(_worker);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Stops accepting events, lets the worker deliver the ones already accepted, and waits for it to end.
+     */
+    public void close() {
+        long end = _tail.getAndSet(CLOSED); // a publisher that has not claimed its slot yet now fails and drops
+        if (end != CLOSED) {
+            _end = end;
+            _running = false;
+        }
+        LockSupport.unpark(_worker);
+        boolean interrupted = false;
+        while (_worker.isAlive()) {
+            try {
+                _worker.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    // The worker: takes the published events in order and hands them to the listeners in batches
+    private void dispatch() {
+        ApartmentEvent<?>[] batch = new ApartmentEvent<?>[MAX_BATCH];
+        List<ApartmentEvent<?>> view = Arrays.asList(batch);
+        while (true) {
+            int count = take(batch);
+            if (count > 0) {
+                deliver(count == MAX_BATCH ? view : view.subList(0, count));
+                Arrays.fill(batch, 0, count, null);
+                _delivered += count;
+            } else if (!_running && _head == _end) {
+                return;
+            } else {
+                _waiting = true;
+                if (_slots.get((int) _head & _mask) == null && _running)
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                _waiting = false;
+            }
+        }
+    }
+
+    // Moves the published events at the head of the buffer into the batch, returns how many
+    private int take(ApartmentEvent<?>[] batch) {
+        long head = _head;
+        int count = 0;
+        while (count < batch.length) {
+            int slot = (int) head & _mask;
+            ApartmentEvent<?> event = _slots.get(slot);
+            if (event == null)
+                break; // not published yet
+            _slots.lazySet(slot, null);
+            batch[count++] = event;
+            head++;
+        }
+        _head = head;
+        return count;
+    }
+
+    // Hands a batch to every listener, a failing listener does not stop the others
+    private void deliver(List<ApartmentEvent<?>> events) {
+        for (ApartmentListener listener : _listeners) {
+            try {
+                listener.apartmentsChanged(events);
+            } catch (RuntimeException e) {
+                Thread.UncaughtExceptionHandler handler = _worker.getUncaughtExceptionHandler();
+                handler.uncaughtException(_worker, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The ApartmentImporter class reads apartments from a CSV file, one per line:
+ * <pre>
+ * rooms,area,price,tenant name,tenant ID,tenant date of birth,rental start date,rental end date
+ * 3,80,5000,Dana Levi,123456789,14/02/1990,01/01/2024,01/01/2025
+ * </pre>
+ * Dates are in the format DD/MM/YYYY, numbers are plain decimals, and fields are not
+ * quoted, so a name cannot hold a comma. Lines that are empty or start with '#' are
+ * skipped. The file is UTF-8, with lines ending in "\n" or "\r\n".
+ * <p>
+ * Unlike the Apartment constructor, the importer does not replace bad values by defaults:
+ * a row with a value the constructor would replace is not imported, and is reported with
+ * its line number and the reason instead.
+ * <p>
+ * The file is split into chunks at line boundaries, and the chunks are parsed in parallel
+ * on a fork/join pool. Each task reads its chunk into a buffer its thread keeps for the
+ * next chunk, so the bytes are copied once from the file and no buffer is allocated per
+ * chunk. Every row is parsed straight from the bytes into an apartment that holds shared
+ * immutable Dates and its own tenant, with no string splitting and no defensive copies.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentImporter {
+
+    // Constants
+    private static final int CHUNK_SIZE = 1 << 22;      // Bytes of the file parsed by one task
+    private static final int MAX_ROW_LENGTH = 4096;     // Longest row, in bytes, a chunk reads past its end for
+    private static final int TYPICAL_ROW_LENGTH = 80;   // Bytes per row the apartment lists are sized for
+    private static final int NO_OF_FIELDS = 8;
+    private static final int ID_LENGTH = 9;
+    private static final int MAX_EXACT_DIGITS = 15;     // Most digits a decimal is parsed from exactly
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+    private static final ThreadLocal<byte[]> BUFFERS = // A chunk with the byte before it and the row past its end
+            ThreadLocal.withInitial(() -> new byte[1 + CHUNK_SIZE + MAX_ROW_LENGTH]);
+    private static final String[] FIELD_NAMES = {"number of rooms", "area", "price", "tenant name", "tenant ID",
+            "tenant date of birth", "rental start date", "rental end date"};
+
+    /**
+     * Reads the apartments of a file on the common fork/join pool.
+     *
+     * @param file the CSV file
+     * @return the apartments read and the rows rejected
+     * @throws IOException if the file cannot be read
+     */
+    public static Result read(Path file) throws IOException {
+        return importInto(file, null, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads the apartments of a file on the common fork/join pool and adds them to a registry.
+     *
+     * @param file     the CSV file
+     * @param registry the registry to add the apartments to
+     * @return the apartments read and the rows rejected
+     * @throws IOException if the file cannot be read
+     */
+    public static Result importInto(Path file, ApartmentRegistry registry) throws IOException {
+        return importInto(file, registry, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads the apartments of a file on the given pool and adds them to a registry, if one
+     * is given. Each chunk's apartments are added as soon as the chunk is parsed, so adding
+     * overlaps with parsing the rest of the file.
+     *
+     * @param file     the CSV file
+     * @param registry the registry to add the apartments to, or null
+     * @param pool     the pool that parses the chunks
+     * @return the apartments read and the rows rejected
+     * @throws IOException if the file cannot be read
+     */
+    public static Result importInto(Path file, ApartmentRegistry registry, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Callable<Chunk>> tasks = new ArrayList<>();
+            for (long from = 0; from < size; from += CHUNK_SIZE) {
+                long start = from;
+                long end = Math.min(from + CHUNK_SIZE, size);
+                tasks.add(() -> {
+                    Chunk chunk = parseChunk(channel, size, start, end);
+                    if (registry != null)
+                        registry.addAll(chunk._apartments);
+                    return chunk;
+                });
+            }
+            List<Chunk> chunks = new ArrayList<>();
+            int count = 0;
+            for (Future<Chunk> future : pool.invokeAll(tasks)) {
+                chunks.add(future.get());
+                count += chunks.get(chunks.size() - 1)._apartments.size();
+            }
+            List<Apartment> apartments = new ArrayList<>(count);
+            List<RowError> errors = new ArrayList<>();
+            int lines = 0;
+            for (Chunk chunk : chunks) {
+                apartments.addAll(chunk._apartments);
+                for (RowError error : chunk._errors)
+                    errors.add(new RowError(lines + error._line, error._message));
+                lines += chunk._lines;
+            }
+            return new Result(apartments, errors, lines);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException("Import of " + file + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import of " + file + " interrupted");
+        }
+    }
+
+    // Parses the rows that start between two offsets of the file
+    private static Chunk parseChunk(FileChannel channel, long size, long from, long to) throws IOException {
+        long readStart = Math.max(from - 1, 0); // one byte before, to tell if a row starts at from
+        long readEnd = Math.min(to + MAX_ROW_LENGTH, size);
+        byte[] bytes = BUFFERS.get();
+        int length = (int) (readEnd - readStart);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, readStart + buffer.position()) < 0)
+                throw new IOException("File shrank while being read");
+        Chunk chunk = new Chunk();
+        int position = (int) (from - readStart);
+        int limit = (int) (to - readStart);
+        if (from > 0)
+            while (position < limit && bytes[position - 1] != '\n')
+                position++; // the row that holds from belongs to the chunk before
+        while (position < limit) {
+            int end = indexOf(bytes, (byte) '\n', position, length);
+            if (end < 0 && readEnd < size) {
+                chunk._lines++;
+                chunk.reject("row is longer than " + MAX_ROW_LENGTH + " bytes");
+                break; // the rest of the row is past the bytes read, and the chunk ends inside it
+            }
+            if (end < 0)
+                end = length;
+            int rowEnd = end > position && bytes[end - 1] == '\r' ? end - 1 : end;
+            chunk._lines++;
+            if (rowEnd > position && bytes[position] != '#')
+                parseRow(bytes, position, rowEnd, chunk);
+            position = end + 1;
+        }
+        return chunk;
+    }
+
+    // Parses one row into an apartment, or rejects it with the reason
+    private static void parseRow(byte[] bytes, int start, int end, Chunk chunk) {
+        int[] bounds = chunk._bounds;
+        int fields = 0;
+        bounds[0] = start;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == ',') {
+                if (++fields == NO_OF_FIELDS) {
+                    chunk.reject("expected " + NO_OF_FIELDS + " fields, found more");
+                    return;
+                }
+                bounds[fields] = i + 1;
+            }
+        }
+        if (fields != NO_OF_FIELDS - 1) {
+            chunk.reject("expected " + NO_OF_FIELDS + " fields, found " + (fields + 1));
+            return;
+        }
+        bounds[NO_OF_FIELDS] = end + 1;
+
+        long rooms = parseInt(bytes, bounds[0], bounds[1] - 1);
+        if (rooms < Apartment.MIN_ROOMS || rooms > Integer.MAX_VALUE) {
+            chunk.reject(invalid(0, bytes, bounds));
+            return;
+        }
+        double area = parseDecimal(bytes, bounds[1], bounds[2] - 1);
+        if (!(area >= Apartment.MIN_AREA)) {
+            chunk.reject(invalid(1, bytes, bounds));
+            return;
+        }
+        double price = parseDecimal(bytes, bounds[2], bounds[3] - 1);
+        if (!(price >= Apartment.MIN_PRICE)) {
+            chunk.reject(invalid(2, bytes, bounds));
+            return;
+        }
+        if (bounds[4] - 1 == bounds[3]) {
+            chunk.reject("empty " + FIELD_NAMES[3]);
+            return;
+        }
+        String name = new String(bytes, bounds[3], bounds[4] - 1 - bounds[3], StandardCharsets.UTF_8);
+        String id = new String(bytes, bounds[4], bounds[5] - 1 - bounds[4], StandardCharsets.UTF_8);
+        if (id.length() != ID_LENGTH) {
+            chunk.reject(invalid(4, bytes, bounds));
+            return;
+        }
+        int birth = Date.parseEpochDay(bytes, bounds[5], bounds[6] - 1);
+        int rentalStart = Date.parseEpochDay(bytes, bounds[6], bounds[7] - 1);
+        int rentalEnd = Date.parseEpochDay(bytes, bounds[7], bounds[8] - 1);
+        if (birth < 0 || rentalStart < 0 || rentalEnd < 0) {
+            chunk.reject(invalid(birth < 0 ? 5 : rentalStart < 0 ? 6 : 7, bytes, bounds));
+            return;
+        }
+        if (rentalEnd <= rentalStart) {
+            chunk.reject(FIELD_NAMES[7] + " is not after the " + FIELD_NAMES[6]);
+            return;
+        }
+        Person tenant = new Person(name, Date.ofEpochDay(birth), id);
+        chunk._apartments.add(new Apartment((int) rooms, area, price, tenant,
+                Date.ofEpochDay(rentalStart), Date.ofEpochDay(rentalEnd)));
+    }
+
+    // The reason for rejecting a row with a bad value in the given field
+    private static String invalid(int field, byte[] bytes, int[] bounds) {
+        String value = new String(bytes, bounds[field], bounds[field + 1] - 1 - bounds[field], StandardCharsets.UTF_8);
+        return "invalid " + FIELD_NAMES[field] + ": \"" + value + "\"";
+    }
+
+    // Parses a non-negative whole number, or returns -1 if the bytes are not one
+    private static long parseInt(byte[] bytes, int start, int end) {
+        if (start == end || end - start > MAX_EXACT_DIGITS)
+            return -1;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Parses a plain decimal of digits and at most one point, or returns NaN if the bytes are not one
+    private static double parseDecimal(byte[] bytes, int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int point = -1;
+        for (int i = start; i < end; i++) {
+            int c = bytes[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+            } else if (c == '.' && point < 0) {
+                point = i;
+            } else {
+                return Double.NaN; // a sign, an exponent, a space or a second point
+            }
+        }
+        if (digits == 0)
+            return Double.NaN;
+        if (digits <= MAX_EXACT_DIGITS) // both parts are exact doubles, so one division rounds correctly
+            return point < 0 ? mantissa : mantissa / POWERS_OF_TEN[end - point - 1];
+        // Too many digits to be exact, the text holds only digits and a point so parseDouble reads it the same
+        double value = Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+        return Double.isFinite(value) ? value : Double.NaN;
+    }
+
+    // The index of the first occurrence of the byte between the given indexes, or -1
+    private static int indexOf(byte[] bytes, byte value, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (bytes[i] == value)
+                return i;
+        return -1;
+    }
+
+    /**
+     * A row that was not imported, with the reason.
+     */
+    public static final class RowError {
+
+        // Instance variables
+        private final int _line;
+        private final String _message;
+
+        private RowError(int line, String message) {
+            _line = line;
+            _message = message;
+        }
+
+        /**
+         * Gets the number of the row's line in the file, counting from 1.
+         *
+         * @return the line number
+         */
+        public int getLine() {
+            return _line;
+        }
+
+        /**
+         * Gets the reason the row was not imported.
+         *
+         * @return the reason
+         */
+        public String getMessage() {
+            return _message;
+        }
+
+        /**
+         * Returns the line number and the reason.
+         *
+         * @return the string representation
+         */
+        public String toString() {
+            return "line " + _line + ": " + _message;
+        }
+    }
+
+    /**
+     * The outcome of reading a file: the apartments read and the rows rejected, both in file order.
+     */
+    public static final class Result {
+
+        // Instance variables
+        private final List<Apartment> _apartments;
+        private final List<RowError> _errors;
+        private final int _lines;
+
+        private Result(List<Apartment> apartments, List<RowError> errors, int lines) {
+            _apartments = Collections.unmodifiableList(apartments);
+            _errors = Collections.unmodifiableList(errors);
+            _lines = lines;
+        }
+
+        /**
+         * Gets the apartments read, in file order. They are held by reference, not copied.
+         *
+         * @return an unmodifiable list of the apartments
+         */
+        public List<Apartment> getApartments() {
+            return _apartments;
+        }
+
+        /**
+         * Gets the rows that were not imported.
+         *
+         * @return an unmodifiable list of the rejected rows
+         */
+        public List<RowError> getErrors() {
+            return _errors;
+        }
+
+        /**
+         * Gets the number of lines in the file, including the skipped and the rejected ones.
+         *
+         * @return the number of lines
+         */
+        public int getLineCount() {
+            return _lines;
+        }
+    }
+
+    // What one task parsed: the apartments, and the rejected rows numbered from 1 within the chunk
+    private static class Chunk {
+        private final List<Apartment> _apartments = new ArrayList<>(CHUNK_SIZE / TYPICAL_ROW_LENGTH);
+        private final List<RowError> _errors = new ArrayList<>();
+        private final int[] _bounds = new int[NO_OF_FIELDS + 1]; // start of each field, then the end of the row plus one
+        private int _lines;
+
+        // Rejects the row on the chunk's current line
+        private void reject(String message) {
+            _errors.add(new RowError(_lines, message));
+        }
+    }
+}
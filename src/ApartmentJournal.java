@@ -0,0 +1,586 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * The ApartmentJournal class makes changes to apartments durable. It listens to the
+ * apartments added to it and appends every change to a write-ahead log before the
+ * changing thread goes on, so a change that returned survives a crash.
+ * <p>
+ * Group commit: a changing thread appends its record to a shared buffer and waits for it
+ * to be forced to disk. The first waiting thread becomes the leader, writes everything in
+ * the buffer and forces the log once; the records appended meanwhile wait for the next
+ * leader. A burst of changes from many threads is thus forced with few fsync calls.
+ * <p>
+ * A snapshot writes every apartment with {@link ApartmentCodec} to a new file, renames it
+ * over the old snapshot and starts an empty log. Both files carry a generation number; a
+ * log whose generation is not the snapshot's, left by a crash between the two steps, is
+ * ignored. open loads the snapshot and replays the log through the Apartment methods. A
+ * record whose checksum fails ends the replay, so a record torn by a crash is dropped.
+ * <p>
+ * Log record layout:
+ * <pre>
+ * int     length of the payload
+ * int     CRC32 of the payload
+ * byte    kind of change
+ * int     apartment number, in the order the apartments were added
+ * ...     the new value; a new apartment is an ApartmentCodec record
+ * </pre>
+ * An apartment should not be changed while a snapshot is being written. The journal
+ * writes what the apartment holds when it is read, so a change made during the snapshot
+ * may be written twice, which replay handles: every record sets a new value, and
+ * replaying a change of tenant onto the tenant it brought in is refused by changeTenant.
+ * <p>
+ * The journal is told of a change after the apartment made it, so it cannot refuse one.
+ * When a write fails the journal stops: the change that hit the failure and every change
+ * after it stay in memory but are not logged, and the thread that made each of them gets
+ * an UncheckedIOException, so no caller takes such a change for durable. Reopening the
+ * journal recovers the apartments as they were at the last durable change.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentJournal implements ApartmentListener, Closeable {
+
+    // Constants
+    private static final int MAGIC = 0x41504a31;    // "APJ1"
+    private static final int LOG_HEADER_SIZE = 12;  // magic and generation
+    private static final int SNAPSHOT_HEADER_SIZE = 20; // magic, generation, count and CRC32 of the records
+    private static final int RECORD_HEADER_SIZE = 8; // length and CRC32
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int REPLAY_WINDOW = 1 << 20; // Bytes of the log read at once on replay, grown for a longer record
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOG_FILE = "journal.log";
+    private static final byte ADD = 1;              // Kinds of record
+    private static final byte NO_OF_ROOMS = 2;
+    private static final byte AREA = 3;
+    private static final byte PRICE = 4;
+    private static final byte TENANT = 5;
+    private static final byte RENTAL_START_DATE = 6;
+    private static final byte RENTAL_END_DATE = 7;
+    private static final byte TENANT_CHANGED = 8;
+
+    // Instance variables
+    private final Path _directory;
+    private final FileChannel _log;
+    private final long _maxLogSize;     // log size that triggers a snapshot
+    private final List<Apartment> _apartments = new ArrayList<>();
+    private final Map<Apartment, Integer> _numbers = new IdentityHashMap<>();
+    private final Set<Apartment> _adding = Collections.newSetFromMap(new IdentityHashMap<>()); // listened to, ADD not yet sealed
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Condition _durableChanged = _lock.newCondition();
+    private ByteBuffer _pending = ByteBuffer.allocate(INITIAL_BUFFER); // records not written yet
+    private ByteBuffer _spare = ByteBuffer.allocate(INITIAL_BUFFER);   // swapped in while the leader writes
+    private int _recordStart; // position in the pending buffer of the record being written
+    private long _generation;
+    private long _appended;  // records appended so far
+    private long _durable;   // records forced to disk so far
+    private boolean _flushing;
+    private long _syncs;
+    private IOException _failure; // the write that failed, the journal accepts nothing after it
+    private boolean _closed;
+
+    // Opens the log of the given generation after the apartments were loaded and replayed
+    private ApartmentJournal(Path directory, FileChannel log, long generation, long maxLogSize) {
+        _directory = directory;
+        _log = log;
+        _generation = generation;
+        _maxLogSize = maxLogSize;
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and recovers the apartments
+     * from the latest snapshot and the log after it. Snapshots are only taken when asked.
+     *
+     * @param directory the directory holding the snapshot and the log
+     * @return the journal, listening to the recovered apartments
+     * @throws IOException if the files cannot be read or the snapshot is damaged
+     */
+    public static ApartmentJournal open(Path directory) throws IOException {
+        return open(directory, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and recovers the apartments
+     * from the latest snapshot and the log after it.
+     *
+     * @param directory  the directory holding the snapshot and the log
+     * @param maxLogSize the log size in bytes above which a snapshot is taken after a commit
+     * @return the journal, listening to the recovered apartments
+     * @throws IOException if the files cannot be read or the snapshot is damaged
+     */
+    public static ApartmentJournal open(Path directory, long maxLogSize) throws IOException {
+        Files.createDirectories(directory);
+        List<Apartment> apartments = new ArrayList<>();
+        long generation = readSnapshot(directory.resolve(SNAPSHOT_FILE), apartments);
+        FileChannel log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ApartmentJournal journal = new ApartmentJournal(directory, log, generation, maxLogSize);
+        for (Apartment apartment : apartments)
+            journal.track(apartment);
+        try {
+            long end = journal.replay();
+            if (end < 0) {
+                log.truncate(0);
+                log.write(logHeader(generation), 0);
+                log.position(LOG_HEADER_SIZE);
+                log.force(true);
+            } else {
+                log.truncate(end);
+                log.position(end);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        for (Apartment apartment : journal._apartments)
+            apartment.addListener(journal);
+        return journal;
+    }
+
+    /**
+     * Adds a new apartment to the journal and waits until it is durable.
+     *
+     * @param apartment the apartment to add
+     * @return the apartment's number in the journal, or -1 if it was already in it or the journal is closed
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    public int add(Apartment apartment) {
+        _lock.lock();
+        try {
+            if (_closed || _numbers.containsKey(apartment) || !_adding.add(apartment))
+                return -1;
+        } finally {
+            _lock.unlock();
+        }
+        // Listen first, outside the lock, as a thread changing the apartment may hold its monitor.
+        // Until the ADD record is sealed its changes are dropped, and the record holds them instead.
+        apartment.addListener(this);
+        long sequence;
+        int number;
+        boolean added = false;
+        _lock.lock();
+        try {
+            ByteBuffer buffer = reserve(_apartments.size(), ADD, ApartmentCodec.encodedSize(apartment));
+            ApartmentCodec.encode(apartment, buffer);
+            number = track(apartment);
+            sequence = seal();
+            added = true;
+        } finally {
+            _adding.remove(apartment);
+            _lock.unlock();
+            if (!added)
+                apartment.removeListener(this);
+        }
+        awaitDurable(sequence);
+        return number;
+    }
+
+    /**
+     * Gets the apartments in the journal, in the order they were added.
+     *
+     * @return an unmodifiable list of the apartments
+     */
+    public List<Apartment> getApartments() {
+        _lock.lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(_apartments));
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of times the log has been forced to disk since the journal was opened.
+     *
+     * @return the number of fsync calls on the log
+     */
+    public long getSyncCount() {
+        _lock.lock();
+        try {
+            return _syncs;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the change to the log and waits until it is durable.
+     *
+     * @param event the change
+     * @throws UncheckedIOException if the log cannot be written, or a write failed before; the
+     *                              change stays in the apartment but is not durable
+     */
+    public void apartmentChanged(ApartmentEvent<?> event) {
+        long sequence;
+        _lock.lock();
+        try {
+            Integer number = _numbers.get(event.getApartment());
+            if (number == null || _closed)
+                return;
+            append(number, event);
+            sequence = seal();
+        } finally {
+            _lock.unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Writes every apartment to a new snapshot and empties the log.
+     *
+     * @throws IOException if the snapshot or the log cannot be written
+     */
+    public void snapshot() throws IOException {
+        _lock.lock();
+        try {
+            while (_flushing)
+                _durableChanged.awaitUninterruptibly();
+            writeSnapshot();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Stops listening to the apartments and closes the log. Changes made after this are not recorded.
+     *
+     * @throws IOException if the log cannot be closed
+     */
+    public void close() throws IOException {
+        List<Apartment> apartments;
+        _lock.lock();
+        try {
+            if (_closed)
+                return;
+            _closed = true;
+            apartments = new ArrayList<>(_apartments);
+        } finally {
+            _lock.unlock();
+        }
+        for (Apartment apartment : apartments)
+            apartment.removeListener(this); // outside the lock, as in add
+        _lock.lock();
+        try {
+            while (_flushing)
+                _durableChanged.awaitUninterruptibly();
+            _log.close();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    // Gives the apartment the next number
+    private int track(Apartment apartment) {
+        int number = _apartments.size();
+        _apartments.add(apartment);
+        _numbers.put(apartment, number);
+        return number;
+    }
+
+    // Encodes the change as a record in the pending buffer
+    private void append(int number, ApartmentEvent<?> event) {
+        ApartmentEvent.Type<?> type = event.getType();
+        Object value = event.getNewValue();
+        if (type == ApartmentEvent.Type.NO_OF_ROOMS) {
+            reserve(number, NO_OF_ROOMS, 4).putInt((Integer) value);
+        } else if (type == ApartmentEvent.Type.AREA) {
+            reserve(number, AREA, 8).putDouble((Double) value);
+        } else if (type == ApartmentEvent.Type.PRICE) {
+            reserve(number, PRICE, 8).putDouble((Double) value);
+        } else if (type == ApartmentEvent.Type.TENANT) {
+            Person tenant = (Person) value;
+            putPerson(reserve(number, TENANT, personSize(tenant)), tenant);
+        } else if (type == ApartmentEvent.Type.RENTAL_START_DATE) {
+            reserve(number, RENTAL_START_DATE, 4).putInt(((Date) value).getEpochDay());
+        } else if (type == ApartmentEvent.Type.RENTAL_END_DATE) {
+            reserve(number, RENTAL_END_DATE, 4).putInt(((Date) value).getEpochDay());
+        } else if (type == ApartmentEvent.Type.TENANT_CHANGED) {
+            ApartmentState state = (ApartmentState) value;
+            Person tenant = state.getTenant();
+            ByteBuffer buffer = reserve(number, TENANT_CHANGED, 12 + personSize(tenant));
+            buffer.putInt(state.getRentalStartDate().getEpochDay());
+            buffer.putDouble(state.getPrice());
+            putPerson(buffer, tenant);
+        }
+    }
+
+    // Makes room for a record with a value of the given size and writes everything but the value
+    private ByteBuffer reserve(int number, byte kind, int valueSize) {
+        if (_failure != null)
+            throw new UncheckedIOException("Journal write failed", _failure);
+        int size = RECORD_HEADER_SIZE + 5 + valueSize;
+        if (_pending.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(_pending.capacity() * 2, _pending.position() + size));
+            _pending.flip();
+            bigger.put(_pending);
+            _pending = bigger;
+        }
+        _recordStart = _pending.position();
+        _pending.putInt(5 + valueSize);
+        _pending.putInt(0); // CRC32, filled in by seal
+        _pending.put(kind);
+        _pending.putInt(number);
+        return _pending;
+    }
+
+    // Fills in the checksum of the record just written, returns its sequence number
+    private long seal() {
+        CRC32 crc = new CRC32();
+        crc.update(_pending.duplicate().flip().position(_recordStart + RECORD_HEADER_SIZE));
+        _pending.putInt(_recordStart + 4, (int) crc.getValue());
+        return ++_appended;
+    }
+
+    // Waits until the record with the sequence number is on disk, writing it as leader if no one is
+    private void awaitDurable(long sequence) {
+        _lock.lock();
+        try {
+            while (_durable < sequence) {
+                if (_failure != null)
+                    throw new UncheckedIOException("Journal write failed", _failure);
+                if (_flushing) {
+                    _durableChanged.awaitUninterruptibly();
+                    continue;
+                }
+                _flushing = true;
+                ByteBuffer batch = _pending;
+                _pending = _spare;
+                long upTo = _appended;
+                _lock.unlock();
+                IOException failure = null;
+                long start = System.nanoTime();
+                try {
+                    batch.flip();
+                    while (batch.hasRemaining())
+                        _log.write(batch);
+                    _log.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    _lock.lock();
+                }
+                Metrics.JOURNAL_SYNC_LATENCY.record(System.nanoTime() - start);
+                _spare = batch.clear();
+                _flushing = false;
+                _syncs++;
+                if (failure != null)
+                    _failure = failure;
+                else
+                    _durable = Math.max(_durable, upTo);
+                _durableChanged.signalAll();
+                if (failure == null && _log.size() > _maxLogSize)
+                    writeSnapshot();
+            }
+        } catch (IOException e) {
+            _failure = e;
+            _durableChanged.signalAll();
+            throw new UncheckedIOException(e);
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    // Writes the snapshot and starts the next generation of the log, called with the lock held and no flush running
+    private void writeSnapshot() throws IOException {
+        long generation = _generation + 1;
+        int size = SNAPSHOT_HEADER_SIZE;
+        for (Apartment apartment : _apartments)
+            size += ApartmentCodec.encodedSize(apartment);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.position(SNAPSHOT_HEADER_SIZE);
+        for (Apartment apartment : _apartments)
+            ApartmentCodec.encode(apartment, buffer);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().flip().position(SNAPSHOT_HEADER_SIZE));
+        buffer.putInt(0, MAGIC).putLong(4, generation).putInt(12, _apartments.size()).putInt(16, (int) crc.getValue());
+        buffer.flip();
+
+        Path temporary = _directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, _directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+
+        _generation = generation;
+        _log.truncate(0);
+        _log.write(logHeader(generation), 0);
+        _log.position(LOG_HEADER_SIZE);
+        _log.force(true);
+        _syncs++;
+        _pending.clear(); // the snapshot holds these changes
+        _durable = _appended;
+        _durableChanged.signalAll();
+    }
+
+    // Forces the rename to disk, where the platform allows opening a directory
+    private void forceDirectory() {
+        try (FileChannel directory = FileChannel.open(_directory, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // not supported here, the rename is as durable as the platform makes it
+        }
+    }
+
+    // Replays the log onto the apartments, returns the end of the last good record, or -1 if the log is not of this generation
+    private long replay() throws IOException {
+        long size = _log.size();
+        if (size < LOG_HEADER_SIZE)
+            return -1;
+        ByteBuffer window = ByteBuffer.allocate(REPLAY_WINDOW);
+        read(window.limit(LOG_HEADER_SIZE), 0);
+        if (window.getInt(0) != MAGIC || window.getLong(4) != _generation)
+            return -1;
+        long at = LOG_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (at + RECORD_HEADER_SIZE <= size) { // the log is read a window at a time, so any size replays
+            read(window.clear().limit((int) Math.min(window.capacity(), size - at)), at);
+            int offset = 0;
+            while (offset + RECORD_HEADER_SIZE <= window.limit()) {
+                int length = window.getInt(offset);
+                if (length < 5 || length > size - at - offset - RECORD_HEADER_SIZE)
+                    return at + offset; // torn record
+                if (length > window.limit() - offset - RECORD_HEADER_SIZE)
+                    break; // the record goes on past the window
+                ByteBuffer record = window.duplicate().position(offset + RECORD_HEADER_SIZE)
+                        .limit(offset + RECORD_HEADER_SIZE + length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != window.getInt(offset + 4))
+                    return at + offset;
+                apply(record);
+                offset += RECORD_HEADER_SIZE + length;
+            }
+            if (offset == 0) // a record longer than the window, read it whole on the next pass
+                window = ByteBuffer.allocate(RECORD_HEADER_SIZE + window.getInt(0));
+            at += offset;
+        }
+        return at;
+    }
+
+    // Reads the log from a position until the buffer is full
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            if (_log.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Log shrank during replay");
+    }
+
+    // Applies one record to its apartment through the Apartment methods
+    private void apply(ByteBuffer record) {
+        byte kind = record.get();
+        int number = record.getInt();
+        if (kind == ADD) {
+            if (number == _apartments.size())
+                track(ApartmentCodec.decode(record));
+            return;
+        }
+        if (number >= _apartments.size())
+            throw new IllegalStateException("Log changes apartment " + number + " of " + _apartments.size());
+        Apartment apartment = _apartments.get(number);
+        switch (kind) {
+            case NO_OF_ROOMS:
+                apartment.setNoOfRooms(record.getInt());
+                break;
+            case AREA:
+                apartment.setArea((int) record.getDouble());
+                break;
+            case PRICE:
+                apartment.setPrice(record.getDouble());
+                break;
+            case TENANT:
+                apartment.setTenant(getPerson(record));
+                break;
+            case RENTAL_START_DATE:
+                apartment.setRentalStartDate(Date.ofEpochDay(record.getInt()));
+                break;
+            case RENTAL_END_DATE:
+                apartment.setRentalEndDate(Date.ofEpochDay(record.getInt()));
+                break;
+            case TENANT_CHANGED:
+                Date startDate = Date.ofEpochDay(record.getInt());
+                double price = record.getDouble();
+                apartment.changeTenant(startDate, getPerson(record), price);
+                break;
+            default:
+                throw new IllegalStateException("Unknown log record kind " + kind);
+        }
+    }
+
+    // Loads the apartments of the snapshot, returns its generation, 0 if there is none
+    private static long readSnapshot(Path path, List<Apartment> apartments) throws IOException {
+        if (!Files.exists(path))
+            return 0;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.limit() < SNAPSHOT_HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a snapshot: " + path);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(SNAPSHOT_HEADER_SIZE));
+        if ((int) crc.getValue() != buffer.getInt(16))
+            throw new IOException("Damaged snapshot: " + path);
+        int count = buffer.getInt(12);
+        buffer.position(SNAPSHOT_HEADER_SIZE);
+        for (int i = 0; i < count; i++)
+            apartments.add(ApartmentCodec.decode(buffer));
+        return buffer.getLong(4);
+    }
+
+    // The header of a log of the given generation
+    private static ByteBuffer logHeader(long generation) {
+        return ByteBuffer.allocate(LOG_HEADER_SIZE).putInt(MAGIC).putLong(generation).flip();
+    }
+
+    // Number of bytes putPerson writes
+    private static int personSize(Person person) {
+        return 12 + utf8(person.getName()).length + utf8(person.getId()).length;
+    }
+
+    // Writes the person's date of birth, name and ID
+    private static void putPerson(ByteBuffer buffer, Person person) {
+        byte[] name = utf8(person.getName());
+        byte[] id = utf8(person.getId());
+        buffer.putInt(person.getDateOfBirth().getEpochDay());
+        buffer.putInt(name.length).put(name);
+        buffer.putInt(id.length).put(id);
+    }
+
+    // Reads what putPerson wrote
+    private static Person getPerson(ByteBuffer buffer) {
+        Date birth = Date.ofEpochDay(buffer.getInt());
+        String name = getString(buffer);
+        String id = getString(buffer);
+        return new Person(name, birth.getDay(), birth.getMonth(), birth.getYear(), id);
+    }
+
+    // Reads a length prefixed UTF-8 string
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // The string in UTF-8
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
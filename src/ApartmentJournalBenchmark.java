@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The ApartmentJournalBenchmark class measures the ApartmentJournal on the local file
+ * system: how many durable changes per second it takes from a growing number of threads,
+ * and how many changes share each fsync thanks to group commit; then how long recovery
+ * takes from a snapshot alone and from a snapshot with a long log after it.
+ * <p>
+ * Usage: {@code java ApartmentJournalBenchmark [directory]}, by default a new directory
+ * under the system's temporary directory, deleted at the end.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentJournalBenchmark {
+
+    // Constants
+    private static final int APARTMENTS = 1_000;       // Apartments in the throughput measurement
+    private static final int CHANGES = 4_000;          // Changes per run, shared by the threads
+    private static final int MAX_THREADS = 16;
+    private static final int RECOVERY_APARTMENTS = 100_000; // Apartments in the recovery measurement
+    private static final int RECOVERY_CHANGES = 200_000;    // Logged changes replayed by the recovery measurement
+
+    /**
+     * Runs the measurements.
+     *
+     * @param args an optional directory to work in
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean temporary = args.length == 0;
+        Path base = temporary ? Files.createTempDirectory("journal-benchmark") : Paths.get(args[0]);
+        try {
+            for (int threads = 1; threads <= MAX_THREADS; threads *= 2)
+                throughput(base.resolve("throughput-" + threads), threads);
+            recovery(base.resolve("recovery"));
+        } finally {
+            if (temporary)
+                delete(base);
+        }
+    }
+
+    // Measures durable changes per second from the given number of threads
+    private static void throughput(Path directory, int threads) throws IOException, InterruptedException {
+        try (ApartmentJournal journal = ApartmentJournal.open(directory)) {
+            for (int i = 0; i < APARTMENTS; i++)
+                journal.add(newApartment(i));
+            List<Apartment> apartments = journal.getApartments();
+            long syncsBefore = journal.getSyncCount();
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                workers[t] = new Thread(() -> {
+                    for (int i = first; i < CHANGES; i += threads) {
+                        Apartment apartment = apartments.get(i % APARTMENTS);
+                        synchronized (apartment) {
+                            apartment.setPrice(3000 + i);
+                        }
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (Thread worker : workers)
+                worker.start();
+            for (Thread worker : workers)
+                worker.join();
+            long nanos = System.nanoTime() - start;
+            long syncs = journal.getSyncCount() - syncsBefore;
+            System.out.printf("%2d threads: %,9.0f changes/s, %,6d fsyncs, %5.1f changes per fsync%n",
+                    threads, CHANGES * 1e9 / nanos, syncs, (double) CHANGES / syncs);
+        }
+    }
+
+    // Measures the time to open a journal from a snapshot, then from the snapshot and a long log
+    private static void recovery(Path directory) throws IOException {
+        try (ApartmentJournal journal = ApartmentJournal.open(directory)) {
+            for (int i = 0; i < RECOVERY_APARTMENTS; i++)
+                journal.add(newApartment(i));
+            journal.snapshot();
+        }
+        long start = System.nanoTime();
+        List<Apartment> apartments;
+        try (ApartmentJournal journal = ApartmentJournal.open(directory)) {
+            apartments = journal.getApartments();
+            System.out.printf("Recovery from a snapshot of %,d apartments: %,d ms%n",
+                    apartments.size(), (System.nanoTime() - start) / 1_000_000);
+            Thread[] workers = new Thread[MAX_THREADS];
+            for (int t = 0; t < MAX_THREADS; t++) {
+                int first = t;
+                workers[t] = new Thread(() -> {
+                    for (int i = first; i < RECOVERY_CHANGES; i += MAX_THREADS)
+                        apartments.get(i % RECOVERY_APARTMENTS).setPrice(3000 + i);
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers)
+                worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        start = System.nanoTime();
+        try (ApartmentJournal journal = ApartmentJournal.open(directory)) {
+            System.out.printf("Recovery of %,d apartments from the snapshot and %,d logged changes: %,d ms%n",
+                    journal.getApartments().size(), RECOVERY_CHANGES, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    // A distinct apartment for each number
+    private static Apartment newApartment(int i) {
+        return new Apartment(1 + i % 5, 40 + i % 100, 3000 + i % 1000,
+                new Person("Tenant " + i, 1 + i % 28, 1 + i % 12, 1950 + i % 50, String.format("%09d", i)),
+                1, 1, 2024, 1, 1, 2025);
+    }
+
+    // Deletes a directory and everything in it
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+}
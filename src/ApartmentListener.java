@@ -0,0 +1,33 @@
+import java.util.List;
+
+/**
+ * An ApartmentListener is told about every change to an apartment it listens to, as an
+ * {@link ApartmentEvent} holding the old and new values. It is called on the thread that
+ * changed the apartment, after the change; listeners that must not slow that thread down
+ * can be put behind an {@link ApartmentEventDispatcher}, which calls them in batches on
+ * its own thread.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public interface ApartmentListener {
+
+    /**
+     * Called after an apartment changed.
+     *
+     * @param event the change
+     */
+    void apartmentChanged(ApartmentEvent<?> event);
+
+    /**
+     * Called by an ApartmentEventDispatcher with a batch of changes, in the order they were
+     * published. Calls apartmentChanged for each one unless overridden.
+     *
+     * @param events the changes, valid only during the call
+     */
+    default void apartmentsChanged(List<ApartmentEvent<?>> events) {
+        for (ApartmentEvent<?> event : events)
+            apartmentChanged(event);
+    }
+}
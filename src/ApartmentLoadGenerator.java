@@ -0,0 +1,213 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ApartmentLoadGenerator class stands in for the services that call an ApartmentServer.
+ * It opens one connection per client, each client on a virtual thread of its own, and once
+ * every client is connected, all of them send requests for a fixed time. A client writes
+ * a few requests back to back before reading their answers, as pipelining allows, and each
+ * request may carry a batch of commands. The commands are eight daysLeft for each
+ * changeTenant and each extendRentalPeriod, on apartments picked at random.
+ * <p>
+ * At the end it prints the requests and commands per second, the latency of a request
+ * from the moment it was sent to the moment its answer was read, at the median, the 99th
+ * and 99.9th percentiles and the maximum, and the number of failed requests.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentLoadGenerator {
+
+    // Constants
+    private static final int CONNECTING_AT_ONCE = 256;  // Clients that may be connecting at the same time
+    private static final String REFERENCE_DATE = "1/6/2010";
+
+    // Instance variables
+    private final int _port;
+    private final int _apartments;
+    private final int _pipeline;
+    private final int _batch;
+    private final LatencyHistogram _latency = new LatencyHistogram("request");
+    private final LongAdder _requests = new LongAdder();
+    private final LongAdder _failures = new LongAdder();
+
+    // Creates a generator for a server on the given local port
+    private ApartmentLoadGenerator(int port, int apartments, int pipeline, int batch) {
+        _port = port;
+        _apartments = apartments;
+        _pipeline = pipeline;
+        _batch = batch;
+    }
+
+    /**
+     * Runs the load against a server on the loopback address and prints the results.
+     *
+     * @param port       the port of the server
+     * @param apartments the number of apartments the server has
+     * @param clients    the number of clients, each with a connection of its own
+     * @param seconds    how long the clients send requests
+     * @param pipeline   the requests a client sends before reading their answers, at least 1
+     * @param batch      the commands in a request, 1 for a single call, more for a batch
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public static void run(int port, int apartments, int clients, int seconds, int pipeline, int batch)
+            throws InterruptedException {
+        new ApartmentLoadGenerator(port, apartments, Math.max(1, pipeline), Math.max(1, batch)).run(clients, seconds);
+    }
+
+    // Connects the clients, lets them run and prints the results
+    private void run(int clients, int seconds) throws InterruptedException {
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        Semaphore connecting = new Semaphore(CONNECTING_AT_ONCE);
+        long[] deadline = new long[1];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++)
+                executor.execute(() -> client(connecting, connected, start, deadline));
+            connected.await();
+            long begin = System.nanoTime();
+            deadline[0] = begin + seconds * 1_000_000_000L;
+            start.countDown();
+            executor.shutdown();
+            executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+            long nanos = System.nanoTime() - begin;
+            LatencyHistogram.Snapshot latency = _latency.snapshot();
+            long requests = _requests.sum();
+            System.out.printf("%,d clients, pipeline %d, batch %d: %,.0f requests/s, %,.0f commands/s%n",
+                    clients, _pipeline, _batch, requests * 1e9 / nanos, requests * _batch * 1e9 / nanos);
+            System.out.printf("latency p50 %,.1f ms, p99 %,.1f ms, p99.9 %,.1f ms, max %,.1f ms, %,d failed%n",
+                    latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                    latency.getValueAtPercentile(99.9) / 1e6, latency.getMax() / 1e6, _failures.sum());
+        }
+    }
+
+    // One client: connects, waits for the start, then sends pipelined requests until the deadline
+    private void client(Semaphore connecting, CountDownLatch connected, CountDownLatch start, long[] deadline) {
+        Socket socket;
+        try {
+            connecting.acquireUninterruptibly();
+            try {
+                socket = new Socket(InetAddress.getLoopbackAddress(), _port);
+                socket.setTcpNoDelay(true);
+            } finally {
+                connecting.release();
+            }
+        } catch (IOException e) {
+            _failures.increment();
+            return;
+        } finally {
+            connected.countDown();
+        }
+        try (socket) {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            start.await();
+            while (System.nanoTime() < deadline[0]) {
+                for (int i = 0; i < _pipeline; i++)
+                    writeRequest(out);
+                long sent = System.nanoTime();
+                out.flush();
+                for (int i = 0; i < _pipeline; i++) {
+                    if (readAnswer(in) != 200)
+                        _failures.increment();
+                    _latency.record(System.nanoTime() - sent);
+                    _requests.increment();
+                }
+            }
+        } catch (IOException e) {
+            _failures.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writes one request: a single call, or a batch of commands
+    private void writeRequest(OutputStream out) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder request = new StringBuilder(64 + _batch * 48);
+        if (_batch == 1) {
+            int apartment = random.nextInt(_apartments);
+            switch (random.nextInt(10)) {
+                case 0:
+                    request.append("POST /changeTenant?apartment=").append(apartment).append("&start=").append(REFERENCE_DATE)
+                            .append("&price=").append(4000 + random.nextInt(4000))
+                            .append("&id=123456789&birth=1/1/1995&name=Dana");
+                    break;
+                case 1:
+                    request.append("POST /extendRentalPeriod?apartment=").append(apartment).append("&years=1");
+                    break;
+                default:
+                    request.append("GET /daysLeft?apartment=").append(apartment).append("&date=").append(REFERENCE_DATE);
+            }
+            request.append(" HTTP/1.1\r\nHost: localhost\r\nContent-Length: 0\r\n\r\n");
+            out.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        StringBuilder body = new StringBuilder(_batch * 48);
+        for (int i = 0; i < _batch; i++) {
+            int apartment = random.nextInt(_apartments);
+            switch (random.nextInt(10)) {
+                case 0:
+                    body.append("changeTenant ").append(apartment).append(' ').append(REFERENCE_DATE).append(' ')
+                            .append(4000 + random.nextInt(4000)).append(" 123456789 1/1/1995 Dana\n");
+                    break;
+                case 1:
+                    body.append("extendRentalPeriod ").append(apartment).append(" 1\n");
+                    break;
+                default:
+                    body.append("daysLeft ").append(apartment).append(' ').append(REFERENCE_DATE).append('\n');
+            }
+        }
+        byte[] content = body.toString().getBytes(StandardCharsets.US_ASCII);
+        request.append("POST /batch HTTP/1.1\r\nHost: localhost\r\nContent-Length: ").append(content.length).append("\r\n\r\n");
+        out.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+        out.write(content);
+    }
+
+    // Reads one answer and skips its body, giving the status code
+    private static int readAnswer(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        int status = Integer.parseInt(statusLine.substring(9, 12));
+        int length = 0;
+        for (String header = readLine(in); !header.isEmpty(); header = readLine(in))
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15))
+                length = Integer.parseInt(header.substring(15).trim());
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() < 0)
+                    throw new EOFException("Connection closed in an answer");
+                skipped = 1;
+            }
+            length -= (int) skipped;
+        }
+        return status;
+    }
+
+    // Reads a line ended by CR LF, without the line end
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(32);
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0)
+                throw new EOFException("Connection closed in an answer");
+            if (c != '\r')
+                line.append((char) c);
+        }
+        return line.toString();
+    }
+}
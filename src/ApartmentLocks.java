@@ -0,0 +1,42 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ApartmentLocks class holds the locks that serialize changes to an Apartment made
+ * from several threads. An Apartment does not lock itself, so code that changes apartments
+ * other threads may change at the same time holds the apartment's lock from this class
+ * around the change; TenantChangeBatch and ApartmentServer do. A change made without it,
+ * such as a set method called directly, is not serialized with theirs.
+ * <p>
+ * The locks are striped: an apartment gets one of a fixed set of locks by its identity
+ * hash, so two apartments may share a lock but one apartment always gets the same one.
+ * They are not the apartment's monitor, which adding and removing observers takes, so a
+ * change under one cannot deadlock with an index that is adding or removing the apartment.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public final class ApartmentLocks {
+
+    // Constants
+    private static final int STRIPES = 256;     // Number of locks, a power of two
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+    static {
+        for (int i = 0; i < STRIPES; i++)
+            LOCKS[i] = new ReentrantLock();
+    }
+
+    // Not to be instantiated
+    private ApartmentLocks() {
+    }
+
+    /**
+     * Gets the lock to hold while changing the given apartment.
+     *
+     * @param apartment the apartment
+     * @return the apartment's lock, the same one on every call
+     */
+    public static ReentrantLock lockOf(Apartment apartment) {
+        return LOCKS[System.identityHashCode(apartment) & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * An ApartmentObserver is told right before and right after an apartment it watches
+ * changes, so it can keep data derived from the apartment, such as an index, up to date.
+ * Observers are called on the thread that changes the apartment.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public interface ApartmentObserver {
+
+    /**
+     * Called before the apartment changes, while the getters still return the old values.
+     *
+     * @param apartment the apartment about to change
+     */
+    void beforeChange(Apartment apartment);
+
+    /**
+     * Called after the apartment changed, when the getters return the new values.
+     *
+     * @param apartment the apartment that changed
+     */
+    void afterChange(Apartment apartment);
+}
@@ -0,0 +1,310 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The ApartmentRegistry class holds a collection of apartments and keeps secondary
+ * indexes over them: a hash index on the tenant's ID, a bucket index on the number
+ * of rooms, and sorted indexes on the price, the area and the rental end date.
+ * The registry observes its apartments, so the indexes stay correct when an
+ * apartment is changed through its set methods, extendRentalPeriod or changeTenant.
+ * It remembers the values each apartment is indexed under, and moves the apartment
+ * once a change is done. It starts and stops observing an apartment outside its own
+ * lock, so a thread that changes an apartment under a lock can safely call into it.
+ * The apartments are held by reference, not copied.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentRegistry implements ApartmentObserver {
+
+    // Instance variables
+    private final Map<Apartment, Keys> _apartments = new IdentityHashMap<>(); // the keys each apartment is indexed under
+    private final Map<String, Set<Apartment>> _byTenantId = new HashMap<>();
+    private final Map<Integer, Set<Apartment>> _byNoOfRooms = new HashMap<>();
+    private final TreeMap<Double, Set<Apartment>> _byPrice = new TreeMap<>();
+    private final TreeMap<Double, Set<Apartment>> _byArea = new TreeMap<>();
+    private final TreeMap<Integer, Set<Apartment>> _byRentalEnd = new TreeMap<>(); // keyed by epoch day
+
+    /**
+     * Adds an apartment to the registry.
+     *
+     * @param apartment the apartment to add
+     * @return true if the apartment was added, false if it was already in the registry
+     */
+    public boolean add(Apartment apartment) {
+        synchronized (this) {
+            if (_apartments.containsKey(apartment))
+                return false;
+            _apartments.put(apartment, index(apartment));
+        }
+        apartment.addObserver(this); // outside the lock, a thread changing the apartment may hold a lock on it
+        afterChange(apartment);      // picks up a change made before the registry was observing
+        return true;
+    }
+
+    /**
+     * Adds all the given apartments to the registry.
+     *
+     * @param apartments the apartments to add
+     */
+    public void addAll(Collection<Apartment> apartments) {
+        for (Apartment apartment : apartments)
+            add(apartment);
+    }
+
+    /**
+     * Removes an apartment from the registry.
+     *
+     * @param apartment the apartment to remove
+     * @return true if the apartment was removed, false if it was not in the registry
+     */
+    public boolean remove(Apartment apartment) {
+        synchronized (this) {
+            Keys keys = _apartments.remove(apartment);
+            if (keys == null)
+                return false;
+            unindex(apartment, keys);
+        }
+        apartment.removeObserver(this);
+        return true;
+    }
+
+    /**
+     * Checks if the given apartment is in the registry.
+     *
+     * @param apartment the apartment to look for
+     * @return true if the apartment is in the registry
+     */
+    public synchronized boolean contains(Apartment apartment) {
+        return _apartments.containsKey(apartment);
+    }
+
+    /**
+     * Gets the number of apartments in the registry.
+     *
+     * @return the number of apartments
+     */
+    public synchronized int size() {
+        return _apartments.size();
+    }
+
+    /**
+     * Gets all the apartments in the registry.
+     *
+     * @return a new list of the apartments
+     */
+    public synchronized List<Apartment> getAll() {
+        return new ArrayList<>(_apartments.keySet());
+    }
+
+    /**
+     * Finds the apartments rented by the tenant with the given ID.
+     *
+     * @param id the tenant's ID
+     * @return a new list of the matching apartments
+     */
+    public synchronized List<Apartment> findByTenantId(String id) {
+        return toList(_byTenantId.get(id));
+    }
+
+    /**
+     * Finds the apartments with the given number of rooms.
+     *
+     * @param noOfRooms the number of rooms
+     * @return a new list of the matching apartments
+     */
+    public synchronized List<Apartment> findByNoOfRooms(int noOfRooms) {
+        return toList(_byNoOfRooms.get(noOfRooms));
+    }
+
+    /**
+     * Finds the apartments whose price is in the given range, both ends included.
+     *
+     * @param minPrice the lowest price
+     * @param maxPrice the highest price
+     * @return a new list of the matching apartments, ordered by price
+     */
+    public synchronized List<Apartment> findByPrice(double minPrice, double maxPrice) {
+        if (minPrice > maxPrice)
+            return new ArrayList<>();
+        return flatten(_byPrice.subMap(minPrice, true, maxPrice, true));
+    }
+
+    /**
+     * Finds the apartments whose area is in the given range, both ends included.
+     *
+     * @param minArea the smallest area
+     * @param maxArea the largest area
+     * @return a new list of the matching apartments, ordered by area
+     */
+    public synchronized List<Apartment> findByArea(double minArea, double maxArea) {
+        if (minArea > maxArea)
+            return new ArrayList<>();
+        return flatten(_byArea.subMap(minArea, true, maxArea, true));
+    }
+
+    /**
+     * Finds the apartments whose rental ends in the given range, both ends included.
+     *
+     * @param from the first end date
+     * @param to   the last end date
+     * @return a new list of the matching apartments, ordered by rental end date
+     */
+    public synchronized List<Apartment> findByRentalEndDate(Date from, Date to) {
+        if (from.after(to))
+            return new ArrayList<>();
+        return flatten(_byRentalEnd.subMap(from.getEpochDay(), true, to.getEpochDay(), true));
+    }
+
+    /**
+     * Finds the apartments with the given number of rooms, a price in the given range
+     * and a rental ending in the given range. All ranges include both ends.
+     * Whichever of the room bucket and the rental end range holds fewer apartments is scanned.
+     *
+     * @param noOfRooms the number of rooms
+     * @param minPrice  the lowest price
+     * @param maxPrice  the highest price
+     * @param endFrom   the first rental end date
+     * @param endTo     the last rental end date
+     * @return a new list of the matching apartments
+     */
+    public synchronized List<Apartment> find(int noOfRooms, double minPrice, double maxPrice, Date endFrom, Date endTo) {
+        List<Apartment> result = new ArrayList<>();
+        Set<Apartment> rooms = _byNoOfRooms.get(noOfRooms);
+        if (rooms == null || minPrice > maxPrice || endFrom.after(endTo))
+            return result;
+        int from = endFrom.getEpochDay();
+        int to = endTo.getEpochDay();
+        NavigableMap<Integer, Set<Apartment>> ending = _byRentalEnd.subMap(from, true, to, true);
+        if (isSmaller(ending, rooms.size())) {
+            for (Set<Apartment> bucket : ending.values())
+                for (Apartment apartment : bucket)
+                    if (apartment.getNoOfRooms() == noOfRooms && inRange(apartment.getPrice(), minPrice, maxPrice))
+                        result.add(apartment);
+        } else {
+            for (Apartment apartment : rooms) {
+                int end = apartment.getRentalEndDate().getEpochDay();
+                if (end >= from && end <= to && inRange(apartment.getPrice(), minPrice, maxPrice))
+                    result.add(apartment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Does nothing, the apartment is moved in the indexes once the change is done.
+     *
+     * @param apartment the apartment about to change
+     */
+    public void beforeChange(Apartment apartment) {
+    }
+
+    /**
+     * Moves the apartment in the indexes from the values it was indexed under to its current values.
+     *
+     * @param apartment the apartment that changed
+     */
+    public synchronized void afterChange(Apartment apartment) {
+        Keys keys = _apartments.get(apartment);
+        if (keys == null || keys.matches(apartment))
+            return;
+        unindex(apartment, keys);
+        _apartments.put(apartment, index(apartment));
+    }
+
+    // Adds the apartment to every index under its current values, and gives those values
+    private Keys index(Apartment apartment) {
+        Keys keys = new Keys(apartment);
+        _byTenantId.computeIfAbsent(keys._tenantId, key -> newBucket()).add(apartment);
+        _byNoOfRooms.computeIfAbsent(keys._noOfRooms, key -> newBucket()).add(apartment);
+        _byPrice.computeIfAbsent(keys._price, key -> newBucket()).add(apartment);
+        _byArea.computeIfAbsent(keys._area, key -> newBucket()).add(apartment);
+        _byRentalEnd.computeIfAbsent(keys._rentalEnd, key -> newBucket()).add(apartment);
+        return keys;
+    }
+
+    // Removes the apartment from every index under the values it was indexed under
+    private void unindex(Apartment apartment, Keys keys) {
+        removeFrom(_byTenantId, keys._tenantId, apartment);
+        removeFrom(_byNoOfRooms, keys._noOfRooms, apartment);
+        removeFrom(_byPrice, keys._price, apartment);
+        removeFrom(_byArea, keys._area, apartment);
+        removeFrom(_byRentalEnd, keys._rentalEnd, apartment);
+    }
+
+    // Removes the apartment from the bucket of the key, dropping the bucket when it empties
+    private static <K> void removeFrom(Map<K, Set<Apartment>> index, K key, Apartment apartment) {
+        Set<Apartment> bucket = index.get(key);
+        if (bucket != null && bucket.remove(apartment) && bucket.isEmpty())
+            index.remove(key);
+    }
+
+    // Apartments are compared by identity, so equal apartments can both be registered
+    private static Set<Apartment> newBucket() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // Copies a bucket, which may be missing, into a new list
+    private static List<Apartment> toList(Set<Apartment> bucket) {
+        if (bucket == null)
+            return new ArrayList<>();
+        return new ArrayList<>(bucket);
+    }
+
+    // Copies all the buckets of a range into a new list, in key order
+    private static List<Apartment> flatten(Map<?, Set<Apartment>> range) {
+        List<Apartment> result = new ArrayList<>();
+        for (Set<Apartment> bucket : range.values())
+            result.addAll(bucket);
+        return result;
+    }
+
+    // Checks if the range holds fewer apartments than the limit, stopping as soon as it does not
+    private static boolean isSmaller(Map<?, Set<Apartment>> range, int limit) {
+        int count = 0;
+        for (Set<Apartment> bucket : range.values()) {
+            count += bucket.size();
+            if (count >= limit)
+                return false;
+        }
+        return true;
+    }
+
+    // Checks if the value is in the range, both ends included
+    private static boolean inRange(double value, double min, double max) {
+        return value >= min && value <= max;
+    }
+
+    // The values an apartment is indexed under
+    private static final class Keys {
+        private final String _tenantId;
+        private final int _noOfRooms;
+        private final double _price;
+        private final double _area;
+        private final int _rentalEnd;   // epoch day
+
+        private Keys(Apartment apartment) {
+            _tenantId = apartment.getTenantId();
+            _noOfRooms = apartment.getNoOfRooms();
+            _price = apartment.getPrice();
+            _area = apartment.getArea();
+            _rentalEnd = apartment.getRentalEndDate().getEpochDay();
+        }
+
+        // Checks if the apartment still has these values
+        private boolean matches(Apartment apartment) {
+            return _tenantId.equals(apartment.getTenantId()) && _noOfRooms == apartment.getNoOfRooms() &&
+                    _price == apartment.getPrice() && _area == apartment.getArea() &&
+                    _rentalEnd == apartment.getRentalEndDate().getEpochDay();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ApartmentServer class serves daysLeft, changeTenant and extendRentalPeriod over
+ * HTTP on the loopback address, for other services on the same machine. Apartments are
+ * addressed by their index in the list the server was created with.
+ * <ul>
+ *     <li>{@code GET /daysLeft?apartment=7&date=1/6/2010} answers the days left</li>
+ *     <li>{@code POST /changeTenant?apartment=7&start=1/6/2010&price=5200&id=123456789&birth=3/4/1990&name=Dana}
+ *     answers true or false</li>
+ *     <li>{@code POST /extendRentalPeriod?apartment=7&years=1} answers the new rental end date,
+ *     for at most 100 years at a time</li>
+ *     <li>{@code POST /batch} runs one command per line of the body, in order, and answers one line
+ *     per command. A command is the operation and its values separated by spaces, in the order above,
+ *     such as {@code changeTenant 7 1/6/2010 5200 123456789 3/4/1990 Dana Levi}, the name last.
+ *     A command that fails answers a line starting with "error" and does not stop the batch.</li>
+ * </ul>
+ * A bad request is answered with status 400 and the reason, an unknown path with 404, and
+ * a path called with the other method with 405.
+ * <p>
+ * Every request runs on a virtual thread of its own, so a client that waits does not hold
+ * a platform thread. Calls on one apartment are serialized by the apartment's lock from
+ * {@link ApartmentLocks}, which TenantChangeBatch takes too, so calls on different
+ * apartments mostly run without waiting for each other. Reads take the lock too, so they
+ * never see half a change. Connections are kept alive, and a client may send its next requests before the
+ * answers to the previous ones arrive; they are answered in order. The JDK server closes
+ * kept alive connections beyond 200 by default, so a launcher that serves many clients sets
+ * the system property sun.net.httpserver.maxIdleConnections before the first server is
+ * created, as Main does.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentServer implements AutoCloseable {
+
+    // Constants
+    private static final int BACKLOG = 4096;    // Connections waiting to be accepted
+    private static final int MAX_BATCH = 10_000; // Most commands in one batch
+    private static final int MAX_EXTEND_YEARS = 100; // Most years one extendRentalPeriod call adds
+
+    // Instance variables
+    private final Apartment[] _apartments;
+    private final ExecutorService _executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer _server;
+
+    // Creates a server for the apartments, bound to the port but not yet answering
+    private ApartmentServer(List<Apartment> apartments, int port) throws IOException {
+        _apartments = apartments.toArray(new Apartment[0]);
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        _server.setExecutor(_executor);
+    }
+
+    /**
+     * Creates a server for the given apartments and starts it on the loopback address.
+     * The apartments are held by reference, and must only be changed through the server
+     * while it runs.
+     *
+     * @param apartments the apartments to serve, by index
+     * @param port       the port to listen on, 0 for any free port
+     * @return the running server
+     * @throws IOException if the server cannot listen on the port
+     */
+    public static ApartmentServer start(List<Apartment> apartments, int port) throws IOException {
+        ApartmentServer server = new ApartmentServer(apartments, port);
+        server._server.createContext("/", server::handle);
+        server._server.start();
+        return server;
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return _server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, waits for the requests being handled and stops the server.
+     */
+    public void close() {
+        _server.stop(0);
+        _executor.close();
+    }
+
+    /**
+     * Runs one command, as a line of a batch.
+     *
+     * @param command the command
+     * @return the answer
+     * @throws IllegalArgumentException if the command is not valid
+     */
+    public String execute(String command) {
+        String[] values = command.trim().split(" +", 7);
+        switch (values[0]) {
+            case "daysLeft":
+                checkCount(values, 3);
+                return Integer.toString(daysLeft(parseIndex(values[1]), Date.parse(values[2])));
+            case "changeTenant":
+                checkCount(values, 7);
+                Person newPerson = newPerson(values[6], Date.parse(values[5]), values[4]);
+                return Boolean.toString(changeTenant(parseIndex(values[1]), Date.parse(values[2]),
+                        newPerson, Double.parseDouble(values[3])));
+            case "extendRentalPeriod":
+                checkCount(values, 3);
+                return extendRentalPeriod(parseIndex(values[1]), Integer.parseInt(values[2])).toString();
+            default:
+                throw new IllegalArgumentException("Unknown command " + values[0]);
+        }
+    }
+
+    // Answers one request
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            int status = 200;
+            String answer;
+            try {
+                String path = exchange.getRequestURI().getPath();
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                String allowed = methodOf(path);
+                if (allowed != null && !allowed.equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", allowed);
+                    status = 405;
+                    answer = path + " takes " + allowed + ", not " + exchange.getRequestMethod();
+                } else {
+                    switch (path) {
+                        case "/daysLeft":
+                            answer = Integer.toString(daysLeft(parseIndex(get(query, "apartment")),
+                                    Date.parse(get(query, "date"))));
+                            break;
+                        case "/changeTenant":
+                            Person newPerson = newPerson(get(query, "name"), Date.parse(get(query, "birth")), get(query, "id"));
+                            answer = Boolean.toString(changeTenant(parseIndex(get(query, "apartment")),
+                                    Date.parse(get(query, "start")), newPerson, Double.parseDouble(get(query, "price"))));
+                            break;
+                        case "/extendRentalPeriod":
+                            answer = extendRentalPeriod(parseIndex(get(query, "apartment")),
+                                    Integer.parseInt(get(query, "years"))).toString();
+                            break;
+                        case "/batch":
+                            answer = executeBatch(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                            break;
+                        default:
+                            status = 404;
+                            answer = "Unknown path " + path;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                answer = e.getMessage();
+            }
+            byte[] body = (answer + "\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    // The method a path is called with, reads with GET and changes with POST, or null for an unknown path
+    private static String methodOf(String path) {
+        switch (path) {
+            case "/daysLeft":
+                return "GET";
+            case "/changeTenant":
+            case "/extendRentalPeriod":
+            case "/batch":
+                return "POST";
+            default:
+                return null;
+        }
+    }
+
+    // Runs the commands of a batch in order, answering one line per command
+    private String executeBatch(String body) {
+        String[] commands = body.split("\n");
+        if (commands.length > MAX_BATCH)
+            throw new IllegalArgumentException("More than " + MAX_BATCH + " commands in the batch");
+        StringBuilder answers = new StringBuilder(commands.length * 8);
+        for (String command : commands) {
+            if (command.isBlank())
+                continue;
+            if (answers.length() > 0)
+                answers.append('\n');
+            try {
+                answers.append(execute(command));
+            } catch (IllegalArgumentException e) {
+                answers.append("error ").append(e.getMessage());
+            }
+        }
+        return answers.toString();
+    }
+
+    // Calls daysLeft under the apartment's lock
+    private int daysLeft(int index, Date dateToCheck) {
+        ReentrantLock lock = lockOf(index);
+        lock.lock();
+        try {
+            return _apartments[index].daysLeft(dateToCheck);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Calls changeTenant under the apartment's lock
+    private boolean changeTenant(int index, Date startDate, Person newPerson, double newPrice) {
+        ReentrantLock lock = lockOf(index);
+        lock.lock();
+        try {
+            return _apartments[index].changeTenant(startDate, newPerson, newPrice);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Calls extendRentalPeriod under the apartment's lock, and gives the new rental end date
+    private Date extendRentalPeriod(int index, int extendYear) {
+        if (extendYear > MAX_EXTEND_YEARS)
+            throw new IllegalArgumentException("Cannot extend by more than " + MAX_EXTEND_YEARS + " years: " + extendYear);
+        ReentrantLock lock = lockOf(index);
+        lock.lock();
+        try {
+            _apartments[index].extendRentalPeriod(extendYear);
+            return _apartments[index].getRentalEndDate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The lock of the apartment with the index
+    private ReentrantLock lockOf(int index) {
+        return ApartmentLocks.lockOf(_apartments[index]);
+    }
+
+    // Creates the new tenant through the public constructor, which checks the name and the ID
+    private static Person newPerson(String name, Date dateOfBirth, String id) {
+        return new Person(name, dateOfBirth.getDay(), dateOfBirth.getMonth(), dateOfBirth.getYear(), id);
+    }
+
+    // Parses an apartment index and checks that there is such an apartment
+    private int parseIndex(String text) {
+        int index = Integer.parseInt(text);
+        if (index < 0 || index >= _apartments.length)
+            throw new IllegalArgumentException("No apartment " + index);
+        return index;
+    }
+
+    // Checks that a command has the expected number of values, the operation included
+    private static void checkCount(String[] values, int count) {
+        if (values.length != count)
+            throw new IllegalArgumentException(values[0] + " takes " + (count - 1) + " values");
+    }
+
+    // Splits a raw query into decoded names and values
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null)
+            return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    // Gets a required query parameter
+    private static String get(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null)
+            throw new IllegalArgumentException("Missing parameter " + name);
+        return value;
+    }
+}
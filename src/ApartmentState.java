@@ -0,0 +1,256 @@
+/**
+ * The ApartmentState class is an immutable snapshot of everything an apartment holds:
+ * rooms, area, price, tenant and rental dates. The with methods follow the same rules
+ * as the matching Apartment methods, but return a new state instead of changing this one.
+ * Because a state never changes, it can be shared between threads without locking.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public final class ApartmentState {
+
+    // Instance variables
+    private final int _noOfRooms;
+    private final double _area;
+    private final double _price;
+    private final Person _tenant; // private copy, never handed out
+    private final Date _rentalStartDate;
+    private final Date _rentalEndDate;
+
+    /**
+     * Creates a snapshot of the given apartment.
+     *
+     * @param apartment the apartment to take a snapshot of
+     */
+    public ApartmentState(Apartment apartment) {
+        this(apartment.getNoOfRooms(), apartment.getArea(), apartment.getPrice(), apartment.getTenant(),
+                apartment.getRentalStartDate(), apartment.getRentalEndDate());
+    }
+
+    // Creates a state from values that are already valid, taking ownership of the tenant
+    private ApartmentState(int noOfRooms, double area, double price, Person tenant, Date rentalStartDate, Date rentalEndDate) {
+        _noOfRooms = noOfRooms;
+        _area = area;
+        _price = price;
+        _tenant = tenant;
+        _rentalStartDate = Date.valueOf(rentalStartDate);
+        _rentalEndDate = Date.valueOf(rentalEndDate);
+    }
+
+    //getters
+
+    /**
+     * Gets the number of rooms in the apartment.
+     *
+     * @return the number of rooms
+     */
+    public int getNoOfRooms() {
+        return _noOfRooms;
+    }
+
+    /**
+     * Gets the area of the apartment.
+     *
+     * @return the area
+     */
+    public double getArea() {
+        return _area;
+    }
+
+    /**
+     * Gets the rental price of the apartment.
+     *
+     * @return the price
+     */
+    public double getPrice() {
+        return _price;
+    }
+
+    /**
+     * Gets a copy of the tenant.
+     *
+     * @return the tenant
+     */
+    public Person getTenant() {
+        return new Person(_tenant);
+    }
+
+    /**
+     * Gets the ID of the tenant without copying the tenant.
+     *
+     * @return the tenant's ID
+     */
+    public String getTenantId() {
+        return _tenant.getId();
+    }
+
+    /**
+     * Gets the name of the tenant without copying the tenant.
+     *
+     * @return the tenant's name
+     */
+    public String getTenantName() {
+        return _tenant.getName();
+    }
+
+    /**
+     * Gets the rental start date.
+     *
+     * @return the rental start date, an immutable Date
+     */
+    public Date getRentalStartDate() {
+        return _rentalStartDate;
+    }
+
+    /**
+     * Gets the rental end date.
+     *
+     * @return the rental end date, an immutable Date
+     */
+    public Date getRentalEndDate() {
+        return _rentalEndDate;
+    }
+
+    // with methods
+
+    /**
+     * Returns this state with the number of rooms replaced, as in {@link Apartment#setNoOfRooms(int)}.
+     *
+     * @param roomsToSet the new number of rooms
+     * @return the new state, or this state if the value is not allowed
+     */
+    public ApartmentState withNoOfRooms(int roomsToSet) {
+        if (roomsToSet < Apartment.MIN_ROOMS)
+            return this;
+        return new ApartmentState(roomsToSet, _area, _price, _tenant, _rentalStartDate, _rentalEndDate);
+    }
+
+    /**
+     * Returns this state with the area replaced, as in {@link Apartment#setArea(int)}.
+     *
+     * @param areaToSet the new area
+     * @return the new state, or this state if the value is not allowed
+     */
+    public ApartmentState withArea(int areaToSet) {
+        if (areaToSet < Apartment.MIN_AREA)
+            return this;
+        return new ApartmentState(_noOfRooms, areaToSet, _price, _tenant, _rentalStartDate, _rentalEndDate);
+    }
+
+    /**
+     * Returns this state with the price replaced, as in {@link Apartment#setPrice(double)}.
+     *
+     * @param priceToSet the new price
+     * @return the new state, or this state if the value is not allowed
+     */
+    public ApartmentState withPrice(double priceToSet) {
+        if (!(priceToSet >= Apartment.MIN_PRICE)) // refuses NaN too, as setPrice does
+            return this;
+        return new ApartmentState(_noOfRooms, _area, priceToSet, _tenant, _rentalStartDate, _rentalEndDate);
+    }
+
+    /**
+     * Returns this state with the tenant replaced by a copy of the given person.
+     *
+     * @param tenantToSet the new tenant
+     * @return the new state
+     */
+    public ApartmentState withTenant(Person tenantToSet) {
+        return new ApartmentState(_noOfRooms, _area, _price, new Person(tenantToSet), _rentalStartDate, _rentalEndDate);
+    }
+
+    /**
+     * Returns this state with the rental start date replaced, as in {@link Apartment#setRentalStartDate(Date)}.
+     *
+     * @param startDateToSet the new rental start date
+     * @return the new state, or this state if the rental end date is not after the new start date
+     */
+    public ApartmentState withRentalStartDate(Date startDateToSet) {
+        Date start = Date.valueOf(startDateToSet); // checked and stored as the same immutable value
+        if (!_rentalEndDate.after(start))
+            return this;
+        return new ApartmentState(_noOfRooms, _area, _price, _tenant, start, _rentalEndDate);
+    }
+
+    /**
+     * Returns this state with the rental end date replaced, as in {@link Apartment#setRentalEndDate(Date)}.
+     *
+     * @param endDateToSet the new rental end date
+     * @return the new state, or this state if the new end date is not after the rental start date
+     */
+    public ApartmentState withRentalEndDate(Date endDateToSet) {
+        Date end = Date.valueOf(endDateToSet); // checked and stored as the same immutable value
+        if (!end.after(_rentalStartDate))
+            return this;
+        return new ApartmentState(_noOfRooms, _area, _price, _tenant, _rentalStartDate, end);
+    }
+
+    /**
+     * Returns this state with the rental period extended, as in {@link Apartment#extendRentalPeriod(int)}.
+     *
+     * @param extendYear the number of years to extend the rental period
+     * @return the new state, or this state if the number of years is not positive
+     */
+    public ApartmentState withExtendedRentalPeriod(int extendYear) {
+        if (extendYear <= 0)
+            return this;
+        return new ApartmentState(_noOfRooms, _area, _price, _tenant, _rentalStartDate,
+                _rentalEndDate.withYear(_rentalEndDate.getYear() + extendYear));
+    }
+
+    /**
+     * Returns this state with a new tenant, as in {@link Apartment#changeTenant(Date, Person, double)}.
+     *
+     * @param startDate the new rental start date
+     * @param newPerson the new tenant
+     * @param newPrice  the new rental price
+     * @return the new state, or null if the change is not allowed
+     */
+    public ApartmentState withTenantChange(Date startDate, Person newPerson, double newPrice) {
+        Date start = Date.valueOf(startDate); // checked and stored as the same immutable value
+        if (_tenant.getDateOfBirth().before(newPerson.getDateOfBirth()) &&
+                _price <= newPrice &&
+                daysLeft(start) <= Apartment.MAX_RENT_DAYS_LEFT)
+            return new ApartmentState(_noOfRooms, _area, newPrice, new Person(newPerson), start,
+                    start.addYearsToDate(1));
+        return null;
+    }
+
+    /**
+     * Gets the number of days remaining in the rental period, as in {@link Apartment#daysLeft(Date)}.
+     *
+     * @param dateToCheck the date to check
+     * @return the number of days remaining, or -1 if the date is after the end of the lease
+     */
+    public int daysLeft(Date dateToCheck) {
+        if (dateToCheck.after(_rentalEndDate))
+            return -1; // Date is after the end of the lease
+        return _rentalEndDate.difference(dateToCheck);
+    }
+
+    /**
+     * Creates a new Apartment holding this state.
+     *
+     * @return the new apartment
+     */
+    public Apartment toApartment() {
+        return new Apartment(_noOfRooms, _area, _price, _tenant,
+                _rentalStartDate.getDay(), _rentalStartDate.getMonth(), _rentalStartDate.getYear(),
+                _rentalEndDate.getDay(), _rentalEndDate.getMonth(), _rentalEndDate.getYear());
+    }
+
+    /**
+     * Returns a string representation of the state, in the format of {@link Apartment#toString()}.
+     *
+     * @return the string representation
+     */
+    public String toString() {
+        return "Number of rooms: " + _noOfRooms +
+                "\nArea: " + _area +
+                "\nPrice: " + _price + " NIS" +
+                "\nTenant name: " + _tenant.getName() +
+                "\nRental start date: " + _rentalStartDate +
+                "\nRental end date: " + _rentalEndDate;
+    }
+}
@@ -0,0 +1,313 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ApartmentStore class keeps apartments column by column instead of as objects.
+ * Each field lives in its own primitive array: rooms, area, price, and the rental start,
+ * rental end and tenant birth dates as epoch days. Tenant IDs are dictionary encoded,
+ * so the ID column is an int array of codes. A scan over one or two columns walks
+ * through contiguous memory with no pointer chasing.
+ * A row is addressed by the index add returned. Reading a row does not create objects,
+ * and toApartment builds an Apartment for a row only when one is needed.
+ * The store is not thread-safe.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ApartmentStore {
+
+    // Constants
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Instance variables
+    private int _size;
+    private int[] _noOfRooms = new int[INITIAL_CAPACITY];
+    private double[] _area = new double[INITIAL_CAPACITY];
+    private double[] _price = new double[INITIAL_CAPACITY];
+    private int[] _rentalStart = new int[INITIAL_CAPACITY];  // epoch days
+    private int[] _rentalEnd = new int[INITIAL_CAPACITY];    // epoch days
+    private int[] _tenantBirth = new int[INITIAL_CAPACITY];  // epoch days
+    private int[] _tenantId = new int[INITIAL_CAPACITY];     // codes into _ids
+    private String[] _tenantName = new String[INITIAL_CAPACITY];
+    private final List<String> _ids = new ArrayList<>();     // tenant ID dictionary, by code
+    private final Map<String, Integer> _idCodes = new HashMap<>();
+    private int _maxNoOfRooms;
+
+    /**
+     * Adds the apartment as a new row. The apartment itself is not kept.
+     *
+     * @param apartment the apartment to add
+     * @return the index of the new row
+     */
+    public int add(Apartment apartment) {
+        if (_size == _noOfRooms.length)
+            grow();
+        int row = _size++;
+        _noOfRooms[row] = apartment.getNoOfRooms();
+        _area[row] = apartment.getArea();
+        _price[row] = apartment.getPrice();
+        _rentalStart[row] = apartment.getRentalStartDate().getEpochDay();
+        _rentalEnd[row] = apartment.getRentalEndDate().getEpochDay();
+        _tenantBirth[row] = apartment.getTenantDateOfBirth().getEpochDay();
+        _tenantId[row] = encode(apartment.getTenantId());
+        _tenantName[row] = apartment.getTenantName();
+        _maxNoOfRooms = Math.max(_maxNoOfRooms, _noOfRooms[row]);
+        return row;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return _size;
+    }
+
+    // row getters
+
+    /**
+     * Gets the number of rooms in a row.
+     *
+     * @param row the row index
+     * @return the number of rooms
+     */
+    public int getNoOfRooms(int row) {
+        checkRow(row);
+        return _noOfRooms[row];
+    }
+
+    /**
+     * Gets the area in a row.
+     *
+     * @param row the row index
+     * @return the area
+     */
+    public double getArea(int row) {
+        checkRow(row);
+        return _area[row];
+    }
+
+    /**
+     * Gets the price in a row.
+     *
+     * @param row the row index
+     * @return the price
+     */
+    public double getPrice(int row) {
+        checkRow(row);
+        return _price[row];
+    }
+
+    /**
+     * Gets the rental start date of a row as an epoch day.
+     *
+     * @param row the row index
+     * @return the epoch day of the rental start date
+     */
+    public int getRentalStartDay(int row) {
+        checkRow(row);
+        return _rentalStart[row];
+    }
+
+    /**
+     * Gets the rental end date of a row as an epoch day.
+     *
+     * @param row the row index
+     * @return the epoch day of the rental end date
+     */
+    public int getRentalEndDay(int row) {
+        checkRow(row);
+        return _rentalEnd[row];
+    }
+
+    /**
+     * Gets the tenant's date of birth in a row as an epoch day.
+     *
+     * @param row the row index
+     * @return the epoch day of the tenant's date of birth
+     */
+    public int getTenantBirthDay(int row) {
+        checkRow(row);
+        return _tenantBirth[row];
+    }
+
+    /**
+     * Gets the tenant's ID in a row.
+     *
+     * @param row the row index
+     * @return the tenant's ID
+     */
+    public String getTenantId(int row) {
+        checkRow(row);
+        return _ids.get(_tenantId[row]);
+    }
+
+    /**
+     * Gets the tenant's name in a row.
+     *
+     * @param row the row index
+     * @return the tenant's name
+     */
+    public String getTenantName(int row) {
+        checkRow(row);
+        return _tenantName[row];
+    }
+
+    /**
+     * Sets the price in a row, with the rule of {@link Apartment#setPrice(double)}.
+     *
+     * @param row        the row index
+     * @param priceToSet the new price
+     */
+    public void setPrice(int row, double priceToSet) {
+        checkRow(row);
+        if (priceToSet >= Apartment.MIN_PRICE)
+            _price[row] = priceToSet;
+    }
+
+    /**
+     * Builds an Apartment holding the values of a row.
+     *
+     * @param row the row index
+     * @return a new apartment
+     */
+    public Apartment toApartment(int row) {
+        checkRow(row);
+        Date birth = Date.ofEpochDay(_tenantBirth[row]);
+        Date start = Date.ofEpochDay(_rentalStart[row]);
+        Date end = Date.ofEpochDay(_rentalEnd[row]);
+        Person tenant = new Person(_tenantName[row], birth.getDay(), birth.getMonth(), birth.getYear(), _ids.get(_tenantId[row]));
+        return new Apartment(_noOfRooms[row], _area[row], _price[row], tenant,
+                start.getDay(), start.getMonth(), start.getYear(), end.getDay(), end.getMonth(), end.getYear());
+    }
+
+    // scans
+
+    /**
+     * Sums the price column.
+     *
+     * @return the total price of all rows
+     */
+    public double totalPrice() {
+        double[] price = _price;
+        double total = 0;
+        for (int i = 0; i < _size; i++)
+            total += price[i];
+        return total;
+    }
+
+    /**
+     * Averages the price for each number of rooms.
+     *
+     * @return an array whose element r is the average price of the rows with r rooms, or 0 if there are none
+     */
+    public double[] averagePriceByNoOfRooms() {
+        int[] rooms = _noOfRooms;
+        double[] price = _price;
+        double[] sums = new double[_maxNoOfRooms + 1];
+        int[] counts = new int[_maxNoOfRooms + 1];
+        for (int i = 0; i < _size; i++) {
+            sums[rooms[i]] += price[i];
+            counts[rooms[i]]++;
+        }
+        for (int r = 0; r < sums.length; r++)
+            if (counts[r] > 0)
+                sums[r] /= counts[r];
+        return sums;
+    }
+
+    /**
+     * Counts the rows whose rental ends in the given range, both ends included.
+     *
+     * @param from the first end date
+     * @param to   the last end date
+     * @return the number of matching rows
+     */
+    public int countRentalEndingBetween(Date from, Date to) {
+        int[] end = _rentalEnd;
+        int first = from.getEpochDay();
+        int span = to.getEpochDay() - first;
+        if (span < 0)
+            return 0;
+        int count = 0;
+        for (int i = 0; i < _size; i++)
+            count += Integer.compareUnsigned(end[i] - first, span) <= 0 ? 1 : 0; // one compare for both ends
+        return count;
+    }
+
+    /**
+     * Counts the rows rented by the tenant with the given ID.
+     *
+     * @param id the tenant's ID
+     * @return the number of matching rows
+     */
+    public int countByTenantId(String id) {
+        Integer code = _idCodes.get(id);
+        if (code == null)
+            return 0;
+        int[] ids = _tenantId;
+        int wanted = code;
+        int count = 0;
+        for (int i = 0; i < _size; i++)
+            if (ids[i] == wanted)
+                count++;
+        return count;
+    }
+
+    /**
+     * Computes the days left in the lease of every row, as in {@link Apartment#daysLeft(Date)}.
+     *
+     * @param dateToCheck the date to check
+     * @param daysLeft    the array to fill, at least size() long
+     */
+    public void daysLeft(Date dateToCheck, int[] daysLeft) {
+        LeaseStatusKernel.daysLeft(_rentalEnd, _size, dateToCheck.getEpochDay(), daysLeft);
+    }
+
+    /**
+     * Computes the days left in the lease of every row, and whether the lease is expired,
+     * inside the window for a change of tenant, or active.
+     *
+     * @param dateToCheck the date to check
+     * @param daysLeft    the array to fill with the days left, at least size() long
+     * @param status      the array to fill with the {@link LeaseStatusKernel} status codes, at least size() long
+     */
+    public void leaseStatus(Date dateToCheck, int[] daysLeft, int[] status) {
+        LeaseStatusKernel.classify(_rentalEnd, _size, dateToCheck.getEpochDay(), daysLeft, status);
+    }
+
+    // Gives the tenant ID its dictionary code, adding it if it is new
+    private int encode(String id) {
+        Integer code = _idCodes.get(id);
+        if (code == null) {
+            code = _ids.size();
+            _ids.add(id);
+            _idCodes.put(id, code);
+        }
+        return code;
+    }
+
+    // Doubles the capacity of every column
+    private void grow() {
+        int capacity = _noOfRooms.length * 2;
+        _noOfRooms = Arrays.copyOf(_noOfRooms, capacity);
+        _area = Arrays.copyOf(_area, capacity);
+        _price = Arrays.copyOf(_price, capacity);
+        _rentalStart = Arrays.copyOf(_rentalStart, capacity);
+        _rentalEnd = Arrays.copyOf(_rentalEnd, capacity);
+        _tenantBirth = Arrays.copyOf(_tenantBirth, capacity);
+        _tenantId = Arrays.copyOf(_tenantId, capacity);
+        _tenantName = Arrays.copyOf(_tenantName, capacity);
+    }
+
+    // Checks that the row exists
+    private void checkRow(int row) {
+        if (row < 0 || row >= _size)
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + _size);
+    }
+}
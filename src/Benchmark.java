@@ -0,0 +1,984 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The Benchmark class times the hot paths of the Date, Person and Apartment classes
+ * and of the collections built on them. Every measurement is run a few times to let
+ * the JIT warm up, and only the last round is reported, as time and bytes allocated
+ * per operation.
+ * <p>
+ * Usage: {@code java Benchmark [group ...] [--save file] [--check file]}
+ * <ul>
+ *     <li>group: date, person, apartment, registry, store, occupancy, directory, revenue, events, cache, import, persons, query, lease or versions; all groups run when none is given</li>
+ *     <li>--save: writes the results to the file, to be used as a baseline</li>
+ *     <li>--check: compares the results with a saved baseline and exits with status 1
+ *     if a measurement got slower by more than the tolerance or allocates more</li>
+ * </ul>
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class Benchmark {
+
+    // Constants
+    private static final int ROUNDS = 5;            // Rounds per measurement, the last one is reported
+    private static final int OPERATIONS = 10_000_000; // Operations per round
+    private static final int NO_OF_DATES = 1024;    // Size of the input table, a power of two
+    private static final int MASK = NO_OF_DATES - 1;
+    private static final int REGISTRY_SIZE = 200_000; // Apartments in the registry benchmark
+    private static final int QUERIES = 10_000;      // Queries per round of the registry benchmark
+    private static final int PORTFOLIO_SIZE = 1_000_000; // Apartments in the full scan benchmarks
+    private static final int SCANS = 20;            // Full scans per round of the scan benchmarks
+    private static final int POOL_SIZE = 5_000;     // Apartments and candidates in the matching benchmark
+    private static final int MATCHES = 100;         // Bulk matches per round of the matching benchmark
+    private static final int IMPORT_ROWS = 1_000_000; // Rows in the file of the import benchmark
+    private static final int PERSON_TABLE_SIZE = 1_000_000; // People in the person table benchmark
+    private static final double TIME_TOLERANCE = 1.25; // Slowdown allowed by --check
+    private static final double BYTES_TOLERANCE = 0.5; // Extra bytes per operation allowed by --check
+
+    // Result sinks so the JIT cannot drop the measured work or scalar replace returned objects
+    private static long _sink;
+    private static final Object[] RETAINED = new Object[NO_OF_DATES];
+
+    // Results of this run, name to {ns/op, B/op}
+    private static final Map<String, double[]> RESULTS = new LinkedHashMap<>();
+
+    /**
+     * Runs the selected benchmarks and prints one line per measurement.
+     *
+     * @param args the groups to run, and the --save and --check options
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> groups = new ArrayList<>();
+        String save = null;
+        String check = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--save") && i + 1 < args.length)
+                save = args[++i];
+            else if (args[i].equals("--check") && i + 1 < args.length)
+                check = args[++i];
+            else
+                groups.add(args[i]);
+        }
+
+        Date[] dates = randomDates(NO_OF_DATES);
+        Person[] people = randomPeople(dates);
+        Apartment[] apartments = randomApartments(dates, people);
+        if (groups.isEmpty() || groups.contains("date"))
+            dateBenchmarks(dates);
+        if (groups.isEmpty() || groups.contains("person"))
+            personBenchmarks(people);
+        if (groups.isEmpty() || groups.contains("apartment"))
+            apartmentBenchmarks(apartments, dates, people);
+        if (groups.isEmpty() || groups.contains("registry"))
+            registryBenchmarks();
+        if (groups.isEmpty() || groups.contains("store"))
+            storeBenchmarks(people);
+        if (groups.isEmpty() || groups.contains("occupancy"))
+            occupancyBenchmarks(people);
+        if (groups.isEmpty() || groups.contains("directory"))
+            directoryBenchmarks();
+        if (groups.isEmpty() || groups.contains("revenue"))
+            revenueBenchmarks(people);
+        if (groups.isEmpty() || groups.contains("events"))
+            eventBenchmarks(apartments);
+        if (groups.isEmpty() || groups.contains("cache"))
+            cacheBenchmarks(apartments, dates);
+        if (groups.isEmpty() || groups.contains("import"))
+            importBenchmarks(people);
+        if (groups.isEmpty() || groups.contains("persons"))
+            personTableBenchmarks(dates);
+        if (groups.isEmpty() || groups.contains("query"))
+            queryBenchmarks(people);
+        if (groups.isEmpty() || groups.contains("lease"))
+            leaseBenchmarks(people);
+        if (groups.isEmpty() || groups.contains("versions"))
+            versionBenchmarks(people);
+
+        if (save != null)
+            save(save);
+        if (check != null && !check(check))
+            System.exit(1);
+    }
+
+    // Date: comparison, difference, year arithmetic and construction
+    private static void dateBenchmarks(Date[] dates) {
+        measure(OPERATIONS, "Date.difference (epoch day)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += dates[i & MASK].difference(dates[(i + 1) & MASK]);
+            return sum;
+        });
+        measure(OPERATIONS, "Date.difference (field formula)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += fieldDifference(dates[i & MASK], dates[(i + 1) & MASK]);
+            return sum;
+        });
+        measure(OPERATIONS, "Date.before (epoch day)", () -> {
+            long count = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                if (dates[i & MASK].before(dates[(i + 1) & MASK]))
+                    count++;
+            return count;
+        });
+        measure(OPERATIONS, "Date.before (field by field)", () -> {
+            long count = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                if (fieldBefore(dates[i & MASK], dates[(i + 1) & MASK]))
+                    count++;
+            return count;
+        });
+        measure(OPERATIONS, "Date.after", () -> {
+            long count = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                if (dates[i & MASK].after(dates[(i + 1) & MASK]))
+                    count++;
+            return count;
+        });
+        measure(OPERATIONS, "Date.addYearsToDate", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                Date later = dates[i & MASK].addYearsToDate(1 + (i & 3));
+                RETAINED[i & MASK] = later;
+                sum += later.getYear();
+            }
+            return sum;
+        });
+        measure(OPERATIONS, "Date constructor (valid)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                Date date = new Date(1 + (i % 28), 1 + (i % 12), 1990 + (i & 31));
+                RETAINED[i & MASK] = date;
+                sum += date.getDay();
+            }
+            return sum;
+        });
+        measure(OPERATIONS, "Date constructor (mixed, 1 in 4 invalid)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                Date date = new Date(1 + (i % 31), 1 + (i % 12), 1990 + (i & 31));
+                RETAINED[i & MASK] = date;
+                sum += date.getDay();
+            }
+            return sum;
+        });
+        measure(OPERATIONS, "Date.valueOf", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                Date date = Date.valueOf(1 + (i % 28), 1 + (i % 12), 1990 + (i & 31));
+                RETAINED[i & MASK] = date;
+                sum += date.getDay();
+            }
+            return sum;
+        });
+        measure(OPERATIONS, "Date validation (table)", () -> {
+            long count = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                if (CalendarTable.isValid(1 + (i % 31), 1 + (i % 12), 1990 + (i & 31)))
+                    count++;
+            return count;
+        });
+        measure(OPERATIONS, "Date validation (branches)", () -> {
+            long count = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                if (branchIsValidDate(1 + (i % 31), 1 + (i % 12), 1990 + (i & 31)))
+                    count++;
+            return count;
+        });
+        measure(OPERATIONS, "Date epoch day (table)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += CalendarTable.epochDay(1 + (i % 28), 1 + (i % 12), 1990 + (i & 31));
+            return sum;
+        });
+        measure(OPERATIONS, "Date epoch day (formula)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += dayNumber(1 + (i % 28), 1 + (i % 12), 1990 + (i & 31));
+            return sum;
+        });
+        measure(OPERATIONS, "Date.ofEpochDay (table)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += Date.ofEpochDay(dates[i & MASK].getEpochDay() + (i & 7)).getDay();
+            return sum;
+        });
+        measure(OPERATIONS, "Date.ofEpochDay (search)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += searchOfEpochDay(dates[i & MASK].getEpochDay() + (i & 7)).getDay();
+            return sum;
+        });
+        String[] texts = new String[NO_OF_DATES];
+        for (int i = 0; i < NO_OF_DATES; i++)
+            texts[i] = dates[i].toString();
+        measure(OPERATIONS, "Date.parseEpochDay", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                String text = texts[i & MASK];
+                sum += Date.parseEpochDay(text, 0, text.length());
+            }
+            return sum;
+        });
+        measure(OPERATIONS, "Date.toString", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += dates[i & MASK].toString().length();
+            return sum;
+        });
+        char[] buffer = new char[16];
+        measure(OPERATIONS, "Date.formatTo (char array)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += dates[i & MASK].formatTo(buffer, 0) + buffer[0];
+            return sum;
+        });
+    }
+
+    // Person: accessors, comparison and copying
+    private static void personBenchmarks(Person[] people) {
+        measure(OPERATIONS, "Person.getDateOfBirth", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                Date birth = people[i & MASK].getDateOfBirth();
+                RETAINED[i & MASK] = birth;
+                sum += birth.getDay();
+            }
+            return sum;
+        });
+        measure(OPERATIONS, "Person.compareTo", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += people[i & MASK].compareTo(people[(i + 1) & MASK]);
+            return sum;
+        });
+        measure(OPERATIONS, "Person copy constructor", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                Person copy = new Person(people[i & MASK]);
+                RETAINED[i & MASK] = copy;
+                sum += copy.getName().length();
+            }
+            return sum;
+        });
+    }
+
+    // Apartment: accessors, daysLeft, changeTenant, toString and copying
+    private static void apartmentBenchmarks(Apartment[] apartments, Date[] dates, Person[] people) {
+        measure(OPERATIONS, "Apartment.getRentalEndDate", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                Date end = apartments[i & MASK].getRentalEndDate();
+                RETAINED[i & MASK] = end;
+                sum += end.getMonth();
+            }
+            return sum;
+        });
+        measure(OPERATIONS, "Apartment.daysLeft", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += apartments[i & MASK].daysLeft(dates[(i + 7) & MASK]);
+            return sum;
+        });
+        measure(OPERATIONS, "Apartment copy constructor", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                Apartment copy = new Apartment(apartments[i & MASK]);
+                RETAINED[i & MASK] = copy;
+                sum += copy.getNoOfRooms();
+            }
+            return sum;
+        });
+        measure(OPERATIONS, "Apartment.changeTenant (rejected)", () -> {
+            long count = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                if (apartments[i & MASK].changeTenant(dates[(i + 7) & MASK], people[(i + 3) & MASK], 0))
+                    count++;
+            return count;
+        });
+        Person youngest = new Person("Youngest", 1, 1, 2100, "999999999");
+        measure(OPERATIONS / 10, "Apartment copy + changeTenant (accepted)", () -> {
+            long count = 0;
+            for (int i = 0; i < OPERATIONS / 10; i++) {
+                Apartment copy = new Apartment(apartments[i & MASK]);
+                Date start = copy.getRentalEndDate();
+                if (copy.changeTenant(start, youngest, copy.getPrice()))
+                    count++;
+                RETAINED[i & MASK] = copy;
+            }
+            return count;
+        });
+        measure(OPERATIONS / 10, "Apartment.toString", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS / 10; i++)
+                sum += apartments[i & MASK].toString().length();
+            return sum;
+        });
+        StringBuilder builder = new StringBuilder(256);
+        measure(OPERATIONS / 10, "Apartment.appendTo (reused builder)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS / 10; i++) {
+                builder.setLength(0);
+                sum += apartments[i & MASK].appendTo(builder).length();
+            }
+            return sum;
+        });
+    }
+
+    // ApartmentRegistry: an indexed query over a large registry
+    private static void registryBenchmarks() {
+        ApartmentRegistry registry = new ApartmentRegistry();
+        registry.addAll(Arrays.asList(randomApartments(randomDates(REGISTRY_SIZE), randomPeople(randomDates(REGISTRY_SIZE)))));
+        Date today = new Date(1, 6, 2010);
+        Date inNinetyDays = new Date(30, 8, 2010);
+        measure(QUERIES, "ApartmentRegistry.find (3 rooms, 90 days)", () -> {
+            long count = 0;
+            for (int i = 0; i < QUERIES; i++)
+                count += registry.find(3, 0, 6000, today, inNinetyDays).size();
+            return count;
+        });
+    }
+
+    // OccupancyIndex: stabbing counts and a quarter's histogram against full scans
+    private static void occupancyBenchmarks(Person[] people) {
+        Apartment[] portfolio = randomPortfolio(REGISTRY_SIZE, people);
+        OccupancyIndex index = new OccupancyIndex();
+        for (Apartment apartment : portfolio)
+            index.add(apartment);
+        Date[] days = randomDates(NO_OF_DATES);
+        measure(QUERIES, "OccupancyIndex.countOccupiedOn", () -> {
+            long sum = 0;
+            for (int i = 0; i < QUERIES; i++)
+                sum += index.countOccupiedOn(days[i & MASK]);
+            return sum;
+        });
+        measure(QUERIES / 100, "Count occupied on a day (scan)", () -> {
+            long sum = 0;
+            for (int i = 0; i < QUERIES / 100; i++) {
+                Date day = days[i & MASK];
+                for (Apartment apartment : portfolio)
+                    if (!apartment.getRentalStartDate().after(day) && !apartment.getRentalEndDate().before(day))
+                        sum++;
+            }
+            return sum;
+        });
+        measure(QUERIES / 100, "OccupancyIndex.occupancy (90 days)", () -> {
+            long sum = 0;
+            for (int i = 0; i < QUERIES / 100; i++)
+                sum += index.occupancy(days[i & MASK], Date.ofEpochDay(days[i & MASK].getEpochDay() + 89))[45];
+            return sum;
+        });
+        measure(QUERIES / 100, "Occupancy for 90 days (scan per day)", () -> {
+            long sum = 0;
+            for (int i = 0; i < QUERIES / 100; i++) {
+                int first = days[i & MASK].getEpochDay();
+                int[] counts = new int[90];
+                for (int day = 0; day < counts.length; day++)
+                    for (Apartment apartment : portfolio)
+                        if (apartment.getRentalStartDate().getEpochDay() <= first + day && apartment.getRentalEndDate().getEpochDay() >= first + day)
+                            counts[day]++;
+                sum += counts[45];
+            }
+            return sum;
+        });
+    }
+
+    // TenantDirectory: bulk matching of candidates to apartments against a nested loop
+    private static void directoryBenchmarks() {
+        Person[] candidates = randomPeople(randomDates(POOL_SIZE));
+        List<Apartment> apartments = Arrays.asList(randomApartments(randomDates(POOL_SIZE), randomPeople(randomDates(POOL_SIZE))));
+        TenantDirectory directory = new TenantDirectory();
+        for (Person candidate : candidates)
+            directory.add(candidate);
+        Date startDate = new Date(1, 1, 2030);
+        measure(MATCHES, "TenantDirectory.match (5k x 5k)", () -> {
+            long count = 0;
+            for (int i = 0; i < MATCHES; i++)
+                count += directory.match(apartments, startDate).size();
+            return count;
+        });
+        measure(MATCHES / 20, "Match by nested loop (5k x 5k)", () -> {
+            long count = 0;
+            for (int round = 0; round < MATCHES / 20; round++) {
+                boolean[] taken = new boolean[candidates.length];
+                for (Apartment apartment : apartments) {
+                    if (apartment.daysLeft(startDate) > Apartment.MAX_RENT_DAYS_LEFT)
+                        continue;
+                    int oldest = -1; // the oldest free candidate the apartment accepts, as match picks
+                    for (int i = 0; i < candidates.length; i++)
+                        if (!taken[i] && apartment.getTenantDateOfBirth().before(candidates[i].getDateOfBirth())
+                                && (oldest < 0 || candidates[i].getDateOfBirth().before(candidates[oldest].getDateOfBirth())))
+                            oldest = i;
+                    if (oldest >= 0) {
+                        taken[oldest] = true;
+                        count++;
+                    }
+                }
+            }
+            return count;
+        });
+    }
+
+    // RevenueProjection: revenue of a range of months against a scan, and the cost of an update
+    private static void revenueBenchmarks(Person[] people) {
+        Apartment[] portfolio = randomPortfolio(REGISTRY_SIZE, people);
+        Date first = new Date(1, 1, 1990);
+        Date last = new Date(1, 12, 2031);
+        RevenueProjection projection = new RevenueProjection(first, last);
+        for (Apartment apartment : portfolio)
+            projection.add(apartment);
+        Date from = new Date(1, 1, 2010);
+        Date to = new Date(1, 12, 2012);
+        measure(QUERIES, "RevenueProjection.revenueBetween (3 years)", () -> {
+            long sum = 0;
+            for (int i = 0; i < QUERIES; i++)
+                sum += (long) projection.revenueBetween(from, to);
+            return sum;
+        });
+        measure(QUERIES / 100, "Revenue of 3 years (scan)", () -> {
+            int firstMonth = RevenueProjection.monthIndex(from);
+            int lastMonth = RevenueProjection.monthIndex(to);
+            double sum = 0;
+            for (int i = 0; i < QUERIES / 100; i++) {
+                for (Apartment apartment : portfolio) {
+                    int start = RevenueProjection.monthIndex(apartment.getRentalStartDate());
+                    int end = Math.max(RevenueProjection.monthIndex(apartment.getRentalEndDate()) - 1, start);
+                    sum += Math.max(Math.min(end, lastMonth) - Math.max(start, firstMonth) + 1, 0) * apartment.getPrice();
+                }
+            }
+            return (long) sum;
+        });
+        measure(QUERIES, "Apartment.setPrice (projected)", () -> {
+            long sum = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                Apartment apartment = portfolio[i];
+                apartment.setPrice(apartment.getPrice() + 1);
+                sum += (long) apartment.getPrice();
+            }
+            return sum;
+        });
+    }
+
+    // Apartment events: the cost of a setter with no listener, a direct listener and a dispatcher
+    private static void eventBenchmarks(Apartment[] apartments) {
+        Apartment[] copies = new Apartment[apartments.length];
+        for (int i = 0; i < apartments.length; i++)
+            copies[i] = new Apartment(apartments[i]);
+        measure(OPERATIONS, "Apartment.setPrice (no listeners)", () -> setPrices(copies));
+        long[] count = new long[1];
+        ApartmentListener counter = event -> count[0]++;
+        for (Apartment apartment : copies)
+            apartment.addListener(counter);
+        measure(OPERATIONS, "Apartment.setPrice (direct listener)", () -> setPrices(copies) + count[0]);
+        ApartmentEventDispatcher dispatcher = new ApartmentEventDispatcher(1 << 16);
+        dispatcher.addListener(event -> count[0]++);
+        for (Apartment apartment : copies) {
+            apartment.removeListener(counter);
+            apartment.addListener(dispatcher);
+        }
+        measure(OPERATIONS, "Apartment.setPrice (dispatcher)", () -> setPrices(copies));
+        dispatcher.close();
+        System.out.printf("  dispatcher delivered %,d events, dropped %,d%n", dispatcher.getDeliveredCount(), dispatcher.getDroppedCount());
+    }
+
+    // ApartmentCache: tenant and days left of hot apartments, read directly and through the cache
+    private static void cacheBenchmarks(Apartment[] apartments, Date[] dates) {
+        ApartmentCache cache = new ApartmentCache(NO_OF_DATES);
+        for (Apartment apartment : apartments)
+            cache.add(apartment);
+        Date today = dates[0];
+        measure(OPERATIONS, "Apartment.getTenant", () -> {
+            for (int i = 0; i < OPERATIONS; i++)
+                RETAINED[i & MASK] = apartments[i & MASK].getTenant();
+            return RETAINED[0].hashCode();
+        });
+        measure(OPERATIONS, "ApartmentCache.getTenant", () -> {
+            for (int i = 0; i < OPERATIONS; i++)
+                RETAINED[i & MASK] = cache.getTenant(apartments[i & MASK]);
+            return RETAINED[0].hashCode();
+        });
+        measure(OPERATIONS, "Apartment.daysLeft", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += apartments[i & MASK].daysLeft(today);
+            return sum;
+        });
+        measure(OPERATIONS, "ApartmentCache.daysLeft", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += cache.daysLeft(apartments[i & MASK], today);
+            return sum;
+        });
+        System.out.printf("  cache hits %,d, misses %,d, evictions %,d%n", cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount());
+        for (Apartment apartment : apartments)
+            cache.remove(apartment);
+    }
+
+    // ApartmentImporter: a CSV file of IMPORT_ROWS rows, read by the importer and by splitting lines
+    private static void importBenchmarks(Person[] people) throws IOException {
+        Path file = Files.createTempFile("apartments", ".csv");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                StringBuilder row = new StringBuilder();
+                for (Apartment apartment : randomPortfolio(IMPORT_ROWS, people)) {
+                    row.setLength(0);
+                    row.append(apartment.getNoOfRooms()).append(',').append(apartment.getArea()).append(',')
+                            .append(apartment.getPrice()).append(',').append(apartment.getTenantName()).append(',')
+                            .append(apartment.getTenantId()).append(',');
+                    apartment.getTenantDateOfBirth().appendTo(row).append(',');
+                    apartment.getRentalStartDate().appendTo(row).append(',');
+                    apartment.getRentalEndDate().appendTo(row).append('\n');
+                    writer.append(row);
+                }
+            }
+            measure(IMPORT_ROWS, "ApartmentImporter.read (per row)", () -> {
+                try {
+                    return ApartmentImporter.read(file).getApartments().size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            measure(IMPORT_ROWS, "Split lines + constructor (per row)", () -> {
+                List<Apartment> result = new ArrayList<>();
+                try (BufferedReader reader = Files.newBufferedReader(file)) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        String[] fields = line.split(",");
+                        Date birth = Date.parse(fields[5]);
+                        Date start = Date.parse(fields[6]);
+                        Date end = Date.parse(fields[7]);
+                        result.add(new Apartment(Integer.parseInt(fields[0]), Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                                new Person(fields[3], birth.getDay(), birth.getMonth(), birth.getYear(), fields[4]),
+                                start.getDay(), start.getMonth(), start.getYear(), end.getDay(), end.getMonth(), end.getYear()));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return result.size();
+            });
+            measure(IMPORT_ROWS, "ApartmentImporter.importInto registry", () -> {
+                try {
+                    return ApartmentImporter.importInto(file, new ApartmentRegistry()).getApartments().size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // PersonTable: heap taken by Person objects against the table's bytes, and comparing rows against comparing objects
+    private static void personTableBenchmarks(Date[] dates) {
+        String[] firstNames = {"Dana", "Yossi", "Noa", "Avi", "Maya", "Itai", "Tamar", "Omer", "Shira", "Eitan"};
+        String[] lastNames = {"Levi", "Cohen", "Mizrahi", "Peretz", "Biton", "Dahan", "Avraham", "Friedman", "Katz", "Azulay"};
+        long before = usedHeap();
+        Person[] people = new Person[PERSON_TABLE_SIZE];
+        for (int i = 0; i < PERSON_TABLE_SIZE; i++) {
+            Date birth = dates[i & MASK];
+            String name = firstNames[i % firstNames.length] + " " + lastNames[i / firstNames.length % lastNames.length] + " " + (i % 1000);
+            people[i] = new Person(name, birth.getDay(), birth.getMonth(), birth.getYear() - 30, String.valueOf(100_000_000 + i));
+        }
+        long heapPerPerson = (usedHeap() - before) / PERSON_TABLE_SIZE;
+        PersonTable table = new PersonTable();
+        for (Person person : people)
+            table.add(person);
+        System.out.printf("  Person objects: %d B/person on the heap; PersonTable: %.1f B/person off the heap (%,d distinct names)%n",
+                heapPerPerson, (double) table.getFootprint() / PERSON_TABLE_SIZE, table.getNameCount());
+        measure(OPERATIONS, "Person.compareTo", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += people[i % PERSON_TABLE_SIZE].compareTo(people[(i * 7) % PERSON_TABLE_SIZE]);
+            return sum;
+        });
+        measure(OPERATIONS, "PersonTable.compare", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += table.compare(i % PERSON_TABLE_SIZE, (i * 7) % PERSON_TABLE_SIZE);
+            return sum;
+        });
+        measure(OPERATIONS, "Person.equals (same values)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                if (people[i % PERSON_TABLE_SIZE].equals(people[(i + PERSON_TABLE_SIZE / 2) % PERSON_TABLE_SIZE]))
+                    sum++;
+            return sum;
+        });
+        measure(OPERATIONS, "PersonTable.equals", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                if (table.equals(i % PERSON_TABLE_SIZE, (i + PERSON_TABLE_SIZE / 2) % PERSON_TABLE_SIZE))
+                    sum++;
+            return sum;
+        });
+        PersonTable.Entry entry = table.get(0);
+        measure(PERSON_TABLE_SIZE, "PersonTable.Entry walk (birth day)", () -> {
+            long sum = 0;
+            for (int i = 0; i < PERSON_TABLE_SIZE; i++)
+                sum += entry.moveTo(i).getEpochDayOfBirth();
+            return sum;
+        });
+    }
+
+    // Bytes of heap in use after a full collection
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Sets the price of the apartments round robin, OPERATIONS times
+    private static long setPrices(Apartment[] apartments) {
+        long sum = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            Apartment apartment = apartments[i & MASK];
+            apartment.setPrice(1000 + (i & 1023));
+            sum += (long) apartment.getPrice();
+        }
+        return sum;
+    }
+
+    // PortfolioQuery: a group-by and a top-k over the portfolio, by hand and on pools of 1 to 16 threads
+    private static void queryBenchmarks(Person[] people) {
+        Apartment[] portfolio = randomPortfolio(PORTFOLIO_SIZE, people);
+        Date today = new Date(1, 6, 2010);
+        measure(SCANS * PORTFOLIO_SIZE, "Price per area by rooms (loop)", () -> {
+            long sum = 0;
+            for (int scan = 0; scan < SCANS; scan++) {
+                double[] sums = new double[6];
+                int[] counts = new int[6];
+                for (Apartment apartment : portfolio) {
+                    if (apartment.getRentalEndDate().getEpochDay() >= today.getEpochDay()) {
+                        sums[apartment.getNoOfRooms()] += apartment.getPrice() / apartment.getArea();
+                        counts[apartment.getNoOfRooms()]++;
+                    }
+                }
+                sum += (long) (sums[3] / counts[3]);
+            }
+            return sum;
+        });
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            PortfolioQuery query = new PortfolioQuery(Arrays.asList(portfolio)).on(pool)
+                    .where(apartment -> apartment.getRentalEndDate().getEpochDay() >= today.getEpochDay());
+            measure(SCANS * PORTFOLIO_SIZE, "Price per area by rooms (" + threads + " threads)", () -> {
+                long sum = 0;
+                for (int scan = 0; scan < SCANS; scan++)
+                    sum += (long) query.groupBy(PortfolioQuery.noOfRooms(), PortfolioQuery.pricePerArea()).get(3).getMean();
+                return sum;
+            });
+            measure(SCANS * PORTFOLIO_SIZE, "Top 100 by price (" + threads + " threads)", () -> {
+                long sum = 0;
+                for (int scan = 0; scan < SCANS; scan++)
+                    sum += (long) query.top(100, PortfolioQuery.price()).get(0).getPrice();
+                return sum;
+            });
+            pool.shutdown();
+        }
+    }
+
+    // LeaseStatusKernel: days left and status of every lease, per object, by a loop with branches and by the kernel
+    private static void leaseBenchmarks(Person[] people) {
+        Apartment[] portfolio = randomPortfolio(PORTFOLIO_SIZE, people);
+        int[] endDays = new int[PORTFOLIO_SIZE];
+        for (int i = 0; i < PORTFOLIO_SIZE; i++)
+            endDays[i] = portfolio[i].getRentalEndDate().getEpochDay();
+        Date today = new Date(1, 6, 2010);
+        int referenceDay = today.getEpochDay();
+        int[] daysLeft = new int[PORTFOLIO_SIZE];
+        int[] status = new int[PORTFOLIO_SIZE];
+        measure(SCANS * PORTFOLIO_SIZE, "Lease status (daysLeft)", () -> {
+            long sum = 0;
+            for (int scan = 0; scan < SCANS; scan++) {
+                for (int i = 0; i < PORTFOLIO_SIZE; i++) {
+                    daysLeft[i] = portfolio[i].daysLeft(today);
+                    status[i] = LeaseStatusKernel.statusOf(daysLeft[i]);
+                }
+                sum += daysLeft[scan] + status[scan];
+            }
+            return sum;
+        });
+        measure(SCANS * PORTFOLIO_SIZE, "Lease status (loop with branches)", () -> {
+            long sum = 0;
+            for (int scan = 0; scan < SCANS; scan++) {
+                for (int i = 0; i < PORTFOLIO_SIZE; i++) {
+                    int left = referenceDay > endDays[i] ? -1 : endDays[i] - referenceDay;
+                    daysLeft[i] = left;
+                    status[i] = left < 0 ? LeaseStatusKernel.EXPIRED
+                            : left <= Apartment.MAX_RENT_DAYS_LEFT ? LeaseStatusKernel.IN_WINDOW : LeaseStatusKernel.ACTIVE;
+                }
+                sum += daysLeft[scan] + status[scan];
+            }
+            return sum;
+        });
+        measure(SCANS * PORTFOLIO_SIZE, "Lease status (kernel)", () -> {
+            long sum = 0;
+            for (int scan = 0; scan < SCANS; scan++) {
+                LeaseStatusKernel.classify(endDays, PORTFOLIO_SIZE, referenceDay, daysLeft, status);
+                sum += daysLeft[scan] + status[scan];
+            }
+            return sum;
+        });
+        measure(SCANS * PORTFOLIO_SIZE, "Days left (kernel)", () -> {
+            long sum = 0;
+            for (int scan = 0; scan < SCANS; scan++) {
+                LeaseStatusKernel.daysLeft(endDays, PORTFOLIO_SIZE, referenceDay, daysLeft);
+                sum += daysLeft[scan];
+            }
+            return sum;
+        });
+    }
+
+    // VersionedPortfolio: a snapshot by copying every apartment against a versioned snapshot, and the cost of a change
+    private static void versionBenchmarks(Person[] people) {
+        Apartment[] portfolio = randomPortfolio(PORTFOLIO_SIZE, people);
+        measure(PORTFOLIO_SIZE, "Portfolio snapshot (copy, per apartment)", () -> {
+            Apartment[] copy = new Apartment[PORTFOLIO_SIZE];
+            for (int i = 0; i < PORTFOLIO_SIZE; i++)
+                copy[i] = new Apartment(portfolio[i]);
+            RETAINED[0] = copy;
+            return copy.length;
+        });
+        RETAINED[0] = null;
+        measure(OPERATIONS, "Apartment.setPrice", () -> setScatteredPrices(portfolio));
+        VersionedPortfolio versions = new VersionedPortfolio(Arrays.asList(portfolio));
+        measure(OPERATIONS, "Portfolio snapshot (versioned)", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++)
+                sum += versions.snapshot().size();
+            return sum;
+        });
+        measure(OPERATIONS, "Apartment.setPrice (followed by a portfolio)", () -> setScatteredPrices(portfolio));
+        measure(OPERATIONS, "VersionedPortfolio.setPrice", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                int index = (int) (i * 7919L % PORTFOLIO_SIZE);
+                versions.setPrice(index, 1000 + (i & 1023));
+                sum += (long) versions.get(index).getPrice();
+            }
+            return sum;
+        });
+        VersionedPortfolio.Version kept = versions.snapshot();
+        measure(PORTFOLIO_SIZE, "Version walk (forEach)", () -> {
+            long[] sum = new long[1];
+            kept.forEach(state -> sum[0] += state.getNoOfRooms());
+            return sum[0];
+        });
+    }
+
+    // Sets the prices of apartments spread over the whole portfolio
+    private static long setScatteredPrices(Apartment[] portfolio) {
+        long sum = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            Apartment apartment = portfolio[(int) (i * 7919L % PORTFOLIO_SIZE)];
+            apartment.setPrice(1000 + (i & 1023));
+            sum += (long) apartment.getPrice();
+        }
+        return sum;
+    }
+
+    // ApartmentStore: full scans against the same scans over objects
+    private static void storeBenchmarks(Person[] people) {
+        Apartment[] portfolio = randomPortfolio(PORTFOLIO_SIZE, people);
+        ApartmentStore store = new ApartmentStore();
+        for (Apartment apartment : portfolio)
+            store.add(apartment);
+        Date today = new Date(1, 6, 2010);
+        Date inNinetyDays = new Date(30, 8, 2010);
+        measure(SCANS * PORTFOLIO_SIZE, "Average price by rooms (objects)", () -> {
+            long sum = 0;
+            for (int scan = 0; scan < SCANS; scan++) {
+                double[] sums = new double[6];
+                int[] counts = new int[6];
+                for (Apartment apartment : portfolio) {
+                    sums[apartment.getNoOfRooms()] += apartment.getPrice();
+                    counts[apartment.getNoOfRooms()]++;
+                }
+                sum += (long) (sums[3] / counts[3]);
+            }
+            return sum;
+        });
+        measure(SCANS * PORTFOLIO_SIZE, "Average price by rooms (store)", () -> {
+            long sum = 0;
+            for (int scan = 0; scan < SCANS; scan++)
+                sum += (long) store.averagePriceByNoOfRooms()[3];
+            return sum;
+        });
+        measure(SCANS * PORTFOLIO_SIZE, "Count leases ending (objects)", () -> {
+            long count = 0;
+            for (int scan = 0; scan < SCANS; scan++)
+                for (Apartment apartment : portfolio)
+                    if (!apartment.getRentalEndDate().before(today) && !apartment.getRentalEndDate().after(inNinetyDays))
+                        count++;
+            return count;
+        });
+        measure(SCANS * PORTFOLIO_SIZE, "Count leases ending (store)", () -> {
+            long count = 0;
+            for (int scan = 0; scan < SCANS; scan++)
+                count += store.countRentalEndingBetween(today, inNinetyDays);
+            return count;
+        });
+    }
+
+    // Runs the task ROUNDS times, prints and records the time and the allocation of the last round
+    private static void measure(int operations, String name, Task task) {
+        long nanos = 0;
+        long bytes = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            _sink += task.run();
+            nanos = System.nanoTime() - start;
+            bytes = allocatedBytes() - allocated;
+        }
+        double nanosPerOp = (double) nanos / operations;
+        double bytesPerOp = (double) bytes / operations;
+        RESULTS.put(name, new double[]{nanosPerOp, bytesPerOp});
+        System.out.printf("%-42s %9.2f ns/op %8.1f B/op%n", name, nanosPerOp, bytesPerOp);
+    }
+
+    // Bytes allocated so far by the current thread
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    // Writes the results of this run as a baseline
+    private static void save(String fileName) throws IOException {
+        Properties baseline = new Properties();
+        for (Map.Entry<String, double[]> result : RESULTS.entrySet())
+            baseline.setProperty(result.getKey(), result.getValue()[0] + "," + result.getValue()[1]);
+        try (OutputStream out = new FileOutputStream(fileName)) {
+            baseline.store(out, "Benchmark baseline, ns/op,B/op");
+        }
+    }
+
+    // Compares the results of this run with a baseline, prints every regression, returns true if there is none
+    private static boolean check(String fileName) throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(fileName)) {
+            baseline.load(in);
+        }
+        boolean passed = true;
+        for (Map.Entry<String, double[]> result : RESULTS.entrySet()) {
+            String saved = baseline.getProperty(result.getKey());
+            if (saved == null)
+                continue;
+            String[] values = saved.split(",");
+            double nanos = Double.parseDouble(values[0]);
+            double bytes = Double.parseDouble(values[1]);
+            if (result.getValue()[0] > nanos * TIME_TOLERANCE) {
+                System.out.printf("REGRESSION %s: %.2f ns/op, baseline %.2f ns/op%n", result.getKey(), result.getValue()[0], nanos);
+                passed = false;
+            }
+            if (result.getValue()[1] > bytes + BYTES_TOLERANCE) {
+                System.out.printf("REGRESSION %s: %.1f B/op, baseline %.1f B/op%n", result.getKey(), result.getValue()[1], bytes);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    // Builds a table of valid dates spread over a few decades
+    private static Date[] randomDates(int count) {
+        Random random = new Random(12);
+        Date[] dates = new Date[count];
+        for (int i = 0; i < count; i++)
+            dates[i] = new Date(1 + random.nextInt(28), 1 + random.nextInt(12), 1990 + random.nextInt(40));
+        return dates;
+    }
+
+    // Builds one person per date, born 30 years before it
+    private static Person[] randomPeople(Date[] dates) {
+        Person[] people = new Person[dates.length];
+        for (int i = 0; i < dates.length; i++)
+            people[i] = new Person("Tenant " + i, dates[i].getDay(), dates[i].getMonth(), dates[i].getYear() - 30,
+                    String.valueOf(100000000 + i));
+        return people;
+    }
+
+    // Builds one apartment per date, with a one year lease starting at it
+    private static Apartment[] randomApartments(Date[] dates, Person[] people) {
+        Apartment[] apartments = new Apartment[dates.length];
+        for (int i = 0; i < dates.length; i++)
+            apartments[i] = new Apartment(1 + i % 5, 40 + i % 100, 3000 + i, people[i],
+                    dates[i].getDay(), dates[i].getMonth(), dates[i].getYear(),
+                    dates[i].getDay(), dates[i].getMonth(), dates[i].getYear() + 1);
+        return apartments;
+    }
+
+    // Builds a large portfolio of apartments with scattered leases, in a shuffled allocation order
+    private static Apartment[] randomPortfolio(int count, Person[] people) {
+        Random random = new Random(7);
+        Apartment[] portfolio = new Apartment[count];
+        for (int i = 0; i < count; i++) {
+            int year = 1990 + random.nextInt(40);
+            portfolio[i] = new Apartment(1 + random.nextInt(5), 40 + random.nextInt(100), 3000 + random.nextInt(5000),
+                    people[random.nextInt(people.length)], 1 + random.nextInt(28), 1 + random.nextInt(12), year,
+                    1 + random.nextInt(28), 1 + random.nextInt(12), year + 1);
+        }
+        Collections.shuffle(Arrays.asList(portfolio), random);
+        return portfolio;
+    }
+
+    // The field by field comparison Date.before used before the epoch day was kept
+    private static boolean fieldBefore(Date a, Date b) {
+        return a.getYear() < b.getYear() || (a.getYear() == b.getYear() && (a.getMonth() < b.getMonth() || (a.getMonth() == b.getMonth() && a.getDay() < b.getDay())));
+    }
+
+    // The difference Date.difference computed before the epoch day was kept
+    private static int fieldDifference(Date a, Date b) {
+        return Math.abs(dayNumber(a.getDay(), a.getMonth(), a.getYear()) - dayNumber(b.getDay(), b.getMonth(), b.getYear()));
+    }
+
+    // The day number formula Date used before the calendar tables
+    private static int dayNumber(int day, int month, int year) {
+        return CalendarTable.calculateDate(day, month, year);
+    }
+
+    // The validation Date used before the calendar tables
+    private static boolean branchIsValidDate(int day, int month, int year) {
+        if (day < 1 || day > 31 || month < 1 || month > 12 || year <= 1)
+            return false;
+        if (month == 2)
+            return day <= 28 || (day == 29 && CalendarTable.isLeapYearByRule(year));
+        if (month == 4 || month == 6 || month == 9 || month == 11)
+            return day <= 30;
+        return true;
+    }
+
+    // The search Date.ofEpochDay did before the calendar tables
+    private static Date searchOfEpochDay(int epochDay) {
+        int year = (int) (epochDay / 365.2425);
+        while (dayNumber(1, 1, year + 1) <= epochDay)
+            year++;
+        while (dayNumber(1, 1, year) > epochDay)
+            year--;
+        int month = 12;
+        while (dayNumber(1, month, year) > epochDay)
+            month--;
+        return Date.valueOf(epochDay - dayNumber(1, month, year) + 1, month, year);
+    }
+
+    // A measured piece of work, returning a value that feeds the sink
+    private interface Task {
+        long run();
+    }
+}
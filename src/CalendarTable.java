@@ -0,0 +1,209 @@
+/**
+ * The CalendarTable class answers the calendar questions Date asks on every construction
+ * and every set: is a year leap, how many days has a month, and what is the day number of
+ * a date. For the years from 1600 to 2399 the answers come from tables built once: a leap
+ * year bitset, the number of days in each month, and the day number at which each year and
+ * each month starts. Other years fall back to the formulas.
+ * Day numbers are those of {@link #calculateDate(int, int, int)}, the formula Date always used.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+class CalendarTable {
+
+    // Constants
+    static final int FIRST_YEAR = 1600;  // First year in the tables
+    static final int LAST_YEAR = 2399;   // Last year in the tables
+    private static final int YEARS = LAST_YEAR - FIRST_YEAR + 1;
+    private static final int FIRST_MONTH = 1;
+    private static final int MONTHS = 12;
+    private static final int DAYS_IN_YEAR = 365;
+    private static final int DAYS_IN_400_YEARS = 146097;
+    private static final double DAYS_PER_YEAR = 365.2425;  // Average length of a year
+    private static final int LEAP = 13;  // Offset of the leap year row in the month tables, one row per kind of year
+    private static final int DAYS_OF_YEAR = 367;  // Offset of the leap year row in MONTH_OF_DAY
+
+    // Bit (year - FIRST_YEAR) is set for a leap year
+    private static final long[] LEAP_YEARS = new long[(YEARS + 63) / 64];
+    // Day number of the last day of the previous year, for each year and the year after the last
+    private static final int[] YEAR_START = new int[YEARS + 1];
+    // Days in each month, by [row + month], where row is 0 or LEAP
+    private static final byte[] DAYS_IN_MONTH = {
+            0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31,
+            0, 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    // Days in the year before each month, by [row + month]
+    private static final short[] MONTH_START = new short[2 * LEAP];
+    // Month of each day of the year, by [row + day of the year], where row is 0 or DAYS_OF_YEAR
+    private static final byte[] MONTH_OF_DAY = new byte[2 * DAYS_OF_YEAR];
+
+    static {
+        for (int row = 0; row < 2 * LEAP; row += LEAP)
+            for (int month = FIRST_MONTH + 1; month <= MONTHS; month++)
+                MONTH_START[row + month] = (short) (MONTH_START[row + month - 1] + DAYS_IN_MONTH[row + month - 1]);
+        for (int leap = 0; leap < 2; leap++)
+            for (int month = FIRST_MONTH; month <= MONTHS; month++)
+                for (int day = 1; day <= DAYS_IN_MONTH[leap * LEAP + month]; day++)
+                    MONTH_OF_DAY[leap * DAYS_OF_YEAR + MONTH_START[leap * LEAP + month] + day] = (byte) month;
+        YEAR_START[0] = calculateDate(1, FIRST_MONTH, FIRST_YEAR) - 1;
+        for (int i = 0; i < YEARS; i++) {
+            boolean leap = isLeapYearByRule(FIRST_YEAR + i);
+            if (leap)
+                LEAP_YEARS[i >>> 6] |= 1L << i;
+            YEAR_START[i + 1] = YEAR_START[i] + DAYS_IN_YEAR + (leap ? 1 : 0);
+        }
+    }
+
+    // Not created
+    private CalendarTable() {
+    }
+
+    /**
+     * Determines whether the given year is a leap year.
+     *
+     * @param year the year
+     * @return true if the year has a February 29th
+     */
+    static boolean isLeapYear(int year) {
+        int index = year - FIRST_YEAR;
+        if (Integer.compareUnsigned(index, YEARS) < 0)
+            return (LEAP_YEARS[index >>> 6] & (1L << index)) != 0;
+        return isLeapYearByRule(year);
+    }
+
+    /**
+     * Gets the number of days in a month.
+     *
+     * @param month the month in the year(1-12)
+     * @param year  the year
+     * @return the number of days in the month
+     */
+    static int daysInMonth(int month, int year) {
+        return DAYS_IN_MONTH[row(year) + month];
+    }
+
+    /**
+     * Checks that the day exists in the month of the year.
+     *
+     * @param day   the day in the month
+     * @param month the month in the year
+     * @param year  the year
+     * @return true if the month is 1-12 and the day is between 1 and the length of the month
+     */
+    static boolean isValid(int day, int month, int year) {
+        if (Integer.compareUnsigned(month - FIRST_MONTH, MONTHS) >= 0 || day < 1)
+            return false;
+        return day <= DAYS_IN_MONTH[row(year) + month];
+    }
+
+    /**
+     * Computes the day number of a valid date, equal to {@link #calculateDate(int, int, int)}.
+     *
+     * @param day   the day in the month
+     * @param month the month in the year
+     * @param year  the year
+     * @return the day number
+     */
+    static int epochDay(int day, int month, int year) {
+        int index = year - FIRST_YEAR;
+        if (Integer.compareUnsigned(index, YEARS) < 0)
+            return YEAR_START[index] + MONTH_START[leapRow(index) + month] + day;
+        return calculateDate(day, month, year);
+    }
+
+    /**
+     * Gets the day number of the last day of the year before the given one,
+     * so the day number of a date is this plus its day of the year.
+     *
+     * @param year the year
+     * @return the day number of December 31st of the previous year
+     */
+    static int yearStart(int year) {
+        int index = year - FIRST_YEAR;
+        if (Integer.compareUnsigned(index, YEARS + 1) < 0)
+            return YEAR_START[index];
+        return calculateDate(1, FIRST_MONTH, year) - 1;
+    }
+
+    /**
+     * Finds the year that holds a day number.
+     *
+     * @param epochDay the day number
+     * @return the year of the day
+     */
+    static int yearOf(int epochDay) {
+        int days = epochDay - YEAR_START[0] - 1;
+        if (days >= 0 && epochDay <= YEAR_START[YEARS]) {
+            int index = (int) ((long) days * 400 / DAYS_IN_400_YEARS);  // off by at most one year
+            if (YEAR_START[index] >= epochDay)
+                index--;
+            else if (YEAR_START[index + 1] < epochDay)
+                index++;
+            return FIRST_YEAR + index;
+        }
+        int year = (int) (epochDay / DAYS_PER_YEAR);
+        while (calculateDate(1, FIRST_MONTH, year + 1) <= epochDay)
+            year++;
+        while (calculateDate(1, FIRST_MONTH, year) > epochDay)
+            year--;
+        return year;
+    }
+
+    /**
+     * Finds the month that holds a day of the year.
+     *
+     * @param dayOfYear the day of the year, from 1
+     * @param year      the year
+     * @return the month in the year(1-12)
+     */
+    static int monthOf(int dayOfYear, int year) {
+        return MONTH_OF_DAY[(isLeapYear(year) ? DAYS_OF_YEAR : 0) + dayOfYear];
+    }
+
+    /**
+     * Gets the number of days in the year before a month.
+     *
+     * @param month the month in the year(1-12)
+     * @param year  the year
+     * @return the number of days from January 1st to the first of the month
+     */
+    static int monthStart(int month, int year) {
+        return MONTH_START[row(year) + month];
+    }
+
+    /**
+     * Determines whether the given year is a leap year by the Gregorian rule, without the table.
+     *
+     * @param year the year
+     * @return true if the year has a February 29th
+     */
+    static boolean isLeapYearByRule(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Computes the day number since the beginning of the Christian counting of years, without the table.
+     *
+     * @param day   the day in the month
+     * @param month the month in the year
+     * @param year  the year
+     * @return the day number
+     */
+    static int calculateDate(int day, int month, int year) {
+        if (month < 3) {
+            year--;
+            month = month + 12;
+        }
+        return 365 * year + year / 4 - year / 100 + year / 400 + ((month + 1) * 306) / 10 + (day - 62);
+    }
+
+    // Row of the month tables for the year
+    private static int row(int year) {
+        return isLeapYear(year) ? LEAP : 0;
+    }
+
+    // Row of the month tables for a year given by its index in the tables
+    private static int leapRow(int index) {
+        return (int) (LEAP_YEARS[index >>> 6] >>> index & 1) * LEAP;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * The CalendarTableCheck class checks the CalendarTable against the formulas it replaces,
+ * for every day, month and year combination from before the first table year to after the
+ * last one, valid or not, and for every day number in that span.
+ * The program exits with status 1 if any answer differs.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class CalendarTableCheck {
+
+    // Constants
+    private static final int MARGIN = 5;   // Years checked on each side of the tables, to cover the fallback
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        int firstYear = CalendarTable.FIRST_YEAR - MARGIN;
+        int lastYear = CalendarTable.LAST_YEAR + MARGIN;
+        long checked = 0;
+        long mismatches = 0;
+        for (int year = firstYear; year <= lastYear; year++) {
+            if (CalendarTable.isLeapYear(year) != CalendarTable.isLeapYearByRule(year))
+                mismatches += report("isLeapYear", 1, 1, year);
+            for (int month = -1; month <= 14; month++) {
+                for (int day = -1; day <= 33; day++) {
+                    checked++;
+                    boolean valid = isValidByBranches(day, month, year);
+                    if (CalendarTable.isValid(day, month, year) != valid)
+                        mismatches += report("isValid", day, month, year);
+                    if (!valid)
+                        continue;
+                    int epochDay = CalendarTable.calculateDate(day, month, year);
+                    if (CalendarTable.epochDay(day, month, year) != epochDay)
+                        mismatches += report("epochDay", day, month, year);
+                    Date date = Date.ofEpochDay(epochDay);
+                    if (date.getDay() != day || date.getMonth() != month || date.getYear() != year)
+                        mismatches += report("ofEpochDay", day, month, year);
+                    if (new Date(day, month, year).getEpochDay() != epochDay)
+                        mismatches += report("Date constructor", day, month, year);
+                }
+            }
+        }
+        int firstDay = CalendarTable.calculateDate(1, 1, firstYear);
+        int lastDay = CalendarTable.calculateDate(31, 12, lastYear);
+        for (int epochDay = firstDay, year = firstYear; epochDay <= lastDay; epochDay++) {
+            if (epochDay == CalendarTable.calculateDate(1, 1, year + 1))
+                year++;
+            if (CalendarTable.yearOf(epochDay) != year)
+                mismatches += report("yearOf day " + epochDay, 0, 0, year);
+        }
+        System.out.printf("%,d dates and %,d day numbers checked, %d mismatches%n", checked, lastDay - firstDay + 1, mismatches);
+        if (mismatches != 0)
+            System.exit(1);
+    }
+
+    // The validation Date used before the tables, apart from its year rule
+    private static boolean isValidByBranches(int day, int month, int year) {
+        if (day < 1 || day > 31)
+            return false;
+        if (month < 1 || month > 12)
+            return false;
+        if (month == 2)
+            return day <= 28 || (day == 29 && CalendarTable.isLeapYearByRule(year));
+        if (month == 4 || month == 6 || month == 9 || month == 11)
+            return day <= 30;
+        return true;
+    }
+
+    // Prints a mismatch and counts it
+    private static int report(String what, int day, int month, int year) {
+        System.out.println("Mismatch in " + what + " for " + day + "/" + month + "/" + year);
+        return 1;
+    }
+}
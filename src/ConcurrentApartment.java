@@ -0,0 +1,238 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * The ConcurrentApartment class is a thread-safe apartment. All its values live in one
+ * immutable ApartmentState, which writers replace with a compare-and-set. Readers take
+ * the current state with a single volatile read and never lock, so a reader always sees
+ * rooms, area, price, tenant and rental dates from the same moment.
+ * changeTenant checks its rules and swaps tenant, price and dates in one atomic step.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ConcurrentApartment {
+
+    // Instance variables
+    private final AtomicReference<ApartmentState> _state;
+
+    /**
+     * Creates a concurrent apartment holding a snapshot of the given apartment.
+     *
+     * @param apartment the apartment to copy
+     */
+    public ConcurrentApartment(Apartment apartment) {
+        this(new ApartmentState(apartment));
+    }
+
+    /**
+     * Creates a concurrent apartment holding the given state.
+     *
+     * @param state the initial state
+     */
+    public ConcurrentApartment(ApartmentState state) {
+        _state = new AtomicReference<>(state);
+    }
+
+    /**
+     * Gets a consistent snapshot of the apartment.
+     *
+     * @return the current state
+     */
+    public ApartmentState getState() {
+        return _state.get();
+    }
+
+    /**
+     * Replaces the state if it is still the expected one.
+     *
+     * @param expected the state the caller read
+     * @param newState the state to put instead
+     * @return true if the state was replaced
+     */
+    public boolean compareAndSet(ApartmentState expected, ApartmentState newState) {
+        return _state.compareAndSet(expected, newState);
+    }
+
+    //getters
+
+    /**
+     * Gets the number of rooms in the apartment.
+     *
+     * @return the number of rooms
+     */
+    public int getNoOfRooms() {
+        return _state.get().getNoOfRooms();
+    }
+
+    /**
+     * Gets the area of the apartment.
+     *
+     * @return the area
+     */
+    public double getArea() {
+        return _state.get().getArea();
+    }
+
+    /**
+     * Gets the rental price of the apartment.
+     *
+     * @return the price
+     */
+    public double getPrice() {
+        return _state.get().getPrice();
+    }
+
+    /**
+     * Gets a copy of the tenant currently residing in the apartment.
+     *
+     * @return the tenant
+     */
+    public Person getTenant() {
+        return _state.get().getTenant();
+    }
+
+    /**
+     * Gets the rental start date of the apartment.
+     *
+     * @return the rental start date, an immutable Date
+     */
+    public Date getRentalStartDate() {
+        return _state.get().getRentalStartDate();
+    }
+
+    /**
+     * Gets the rental end date of the apartment.
+     *
+     * @return the rental end date, an immutable Date
+     */
+    public Date getRentalEndDate() {
+        return _state.get().getRentalEndDate();
+    }
+
+    //setters
+
+    /**
+     * Sets the number of rooms in the apartment.
+     *
+     * @param roomsToSet the new number of rooms
+     */
+    public void setNoOfRooms(int roomsToSet) {
+        update(state -> state.withNoOfRooms(roomsToSet));
+    }
+
+    /**
+     * Sets the area of the apartment.
+     *
+     * @param areaToSet the new area
+     */
+    public void setArea(int areaToSet) {
+        update(state -> state.withArea(areaToSet));
+    }
+
+    /**
+     * Sets the rental price of the apartment.
+     *
+     * @param priceToSet the new price
+     */
+    public void setPrice(double priceToSet) {
+        update(state -> state.withPrice(priceToSet));
+    }
+
+    /**
+     * Sets the tenant currently residing in the apartment.
+     *
+     * @param tenantToSet the new tenant
+     */
+    public void setTenant(Person tenantToSet) {
+        update(state -> state.withTenant(tenantToSet)); // withTenant stores a copy
+    }
+
+    /**
+     * Sets the rental start date of the apartment.
+     *
+     * @param startDateToSet the new rental start date
+     */
+    public void setRentalStartDate(Date startDateToSet) {
+        Date start = Date.valueOf(startDateToSet);
+        update(state -> state.withRentalStartDate(start));
+    }
+
+    /**
+     * Sets the rental end date of the apartment.
+     *
+     * @param endDateToSet the new rental end date
+     */
+    public void setRentalEndDate(Date endDateToSet) {
+        Date end = Date.valueOf(endDateToSet);
+        update(state -> state.withRentalEndDate(end));
+    }
+
+    /**
+     * Extends the rental period of the apartment by the specified number of years.
+     *
+     * @param extendYear the number of years to extend the rental period
+     */
+    public void extendRentalPeriod(int extendYear) {
+        update(state -> state.withExtendedRentalPeriod(extendYear));
+    }
+
+    /**
+     * Gets the number of days remaining in the rental period of the apartment.
+     *
+     * @param dateToCheck the date to check
+     * @return the number of days remaining
+     */
+    public int daysLeft(Date dateToCheck) {
+        return _state.get().daysLeft(dateToCheck);
+    }
+
+    /**
+     * Changes the tenant of the apartment in one atomic step.
+     *
+     * @param startDate the new rental start date
+     * @param newPerson the new tenant
+     * @param newPrice the new rental price
+     * @return true if the change was successful, false otherwise
+     */
+    public boolean changeTenant(Date startDate, Person newPerson, double newPrice) {
+        Date start = Date.valueOf(startDate);
+        while (true) {
+            ApartmentState current = _state.get();
+            ApartmentState changed = current.withTenantChange(start, newPerson, newPrice); // stores a copy
+            if (changed == null)
+                return false;
+            if (_state.compareAndSet(current, changed))
+                return true;
+        }
+    }
+
+    /**
+     * Creates a new Apartment holding the current state.
+     *
+     * @return the new apartment
+     */
+    public Apartment toApartment() {
+        return _state.get().toApartment();
+    }
+
+    /**
+     * Returns a string representation of the apartment, taken from one snapshot.
+     *
+     * @return the string representation
+     */
+    public String toString() {
+        return _state.get().toString();
+    }
+
+    // Applies the change until it lands on the state it was computed from
+    private void update(UnaryOperator<ApartmentState> change) {
+        while (true) {
+            ApartmentState current = _state.get();
+            ApartmentState changed = change.apply(current);
+            if (changed == current || _state.compareAndSet(current, changed))
+                return;
+        }
+    }
+}
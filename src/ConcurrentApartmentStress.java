@@ -0,0 +1,141 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ConcurrentApartmentStress class checks that readers of a ConcurrentApartment never
+ * see a torn state. Writer threads change the apartment only through its public methods:
+ * one keeps bringing in a new tenant with changeTenant, one keeps setting a price for the
+ * current tenant with setPrice, and one keeps extending the lease with extendRentalPeriod.
+ * Reader threads check that every snapshot keeps the rules those changes leave behind:
+ * <ul>
+ *     <li>the lease ends on the day and month it started, at least a year later, as
+ *     changeTenant starts a one year lease and extendRentalPeriod adds whole years</li>
+ *     <li>the price is below the band of the next tenant, as a price is only ever set from
+ *     the band of a tenant already in the apartment</li>
+ * </ul>
+ * It then measures how read throughput grows with the number of reader threads.
+ * The program exits with status 1 if a torn read was seen.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class ConcurrentApartmentStress {
+
+    // Constants
+    private static final long RUN_MILLIS = 2000;   // Length of each run
+    private static final int MAX_READERS = Runtime.getRuntime().availableProcessors();
+    private static final int FIRST_ID = 100_000_000; // ID of tenant number 0, the next tenants count up from it
+    private static final double BASE_PRICE = 5000;
+    private static final double BAND = 100;           // Prices of tenant k are BASE_PRICE + k * BAND and up, below the next band
+    private static final int DAYS_BEFORE_END = 30;    // A new lease starts this many days before the current one ends
+    private static final int LAST_YEAR = 2100;        // After it the tenant writer moves the lease back to the first dates
+    private static final int MAX_LEASE_YEARS = 3;     // The lease is not extended beyond it
+
+    /**
+     * Runs the stress check and the reader scaling measurement.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws InterruptedException {
+        ApartmentState first = new ApartmentState(new Apartment(3, 80, BASE_PRICE, tenant(0), 1, 1, 2024, 1, 1, 2025));
+        long torn = 0;
+        for (int readers = 1; readers <= MAX_READERS; readers *= 2)
+            torn += run(first, readers);
+        System.out.println(torn == 0 ? "No torn reads" : torn + " torn reads");
+        if (torn != 0)
+            System.exit(1);
+    }
+
+    // Runs the writers and the given number of readers, returns the number of torn reads
+    private static long run(ApartmentState first, int readers) throws InterruptedException {
+        ConcurrentApartment apartment = new ConcurrentApartment(first);
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder reads = new LongAdder();
+        LongAdder torn = new LongAdder();
+        LongAdder tenantChanges = new LongAdder();
+        Thread[] writers = {
+                new Thread(() -> {
+                    while (running.get())
+                        if (changeTenant(apartment, first))
+                            tenantChanges.increment();
+                }),
+                new Thread(() -> {
+                    while (running.get()) {
+                        int tenant = tenantNumber(apartment.getState());
+                        apartment.setPrice(bandOf(tenant) + ThreadLocalRandom.current().nextInt((int) BAND));
+                    }
+                }),
+                new Thread(() -> {
+                    while (running.get()) {
+                        ApartmentState state = apartment.getState();
+                        if (state.getRentalEndDate().getYear() - state.getRentalStartDate().getYear() < MAX_LEASE_YEARS)
+                            apartment.extendRentalPeriod(1);
+                    }
+                })
+        };
+        Thread[] threads = new Thread[writers.length + readers];
+        System.arraycopy(writers, 0, threads, 0, writers.length);
+        for (int i = writers.length; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                long count = 0;
+                while (running.get()) {
+                    if (!isConsistent(apartment.getState()))
+                        torn.increment();
+                    count++;
+                }
+                reads.add(count);
+            });
+        }
+        for (Thread thread : threads)
+            thread.start();
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        for (Thread thread : threads)
+            thread.join();
+        System.out.printf("%2d readers: %,12d reads/s, %,d tenant changes, %d torn%n",
+                readers, reads.sum() * 1000 / RUN_MILLIS, tenantChanges.sum(), torn.sum());
+        return torn.sum();
+    }
+
+    // Brings in the next tenant shortly before the lease ends, or moves the lease back once the dates run far ahead
+    private static boolean changeTenant(ConcurrentApartment apartment, ApartmentState first) {
+        ApartmentState state = apartment.getState();
+        if (state.getRentalEndDate().getYear() > LAST_YEAR) // the same tenant and price, on the first lease
+            return apartment.compareAndSet(state, first.withTenant(state.getTenant()).withPrice(state.getPrice()));
+        int start = state.getRentalEndDate().getEpochDay() - DAYS_BEFORE_END;
+        Date startDate = Date.ofEpochDay(start);
+        while (startDate.getMonth() == 2 && startDate.getDay() >= 28) // a year on, it may move to another day
+            startDate = Date.ofEpochDay(--start);
+        int next = tenantNumber(state) + 1;
+        return apartment.changeTenant(startDate, tenant(next), bandOf(next));
+    }
+
+    // Checks the rules every state left by the writers keeps
+    private static boolean isConsistent(ApartmentState state) {
+        Date start = state.getRentalStartDate();
+        Date end = state.getRentalEndDate();
+        return end.getDay() == start.getDay() &&
+                end.getMonth() == start.getMonth() &&
+                end.getYear() > start.getYear() &&
+                state.getPrice() < bandOf(tenantNumber(state) + 1);
+    }
+
+    // Tenant number k, born k days after the first so each one is younger than the one before
+    private static Person tenant(int number) {
+        Date birth = Date.ofEpochDay(Date.valueOf(1, 1, 1970).getEpochDay() + number);
+        return new Person("Tenant " + number, birth.getDay(), birth.getMonth(), birth.getYear(),
+                Integer.toString(FIRST_ID + number));
+    }
+
+    // The number of the tenant in the state
+    private static int tenantNumber(ApartmentState state) {
+        return Integer.parseInt(state.getTenantId()) - FIRST_ID;
+    }
+
+    // The lowest price of the tenant with the number
+    private static double bandOf(int number) {
+        return BASE_PRICE + number * BAND;
+    }
+}
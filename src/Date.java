@@ -1,7 +1,14 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * The Date class represents a specific date, including day, month, and year.
  * It provides methods for creating, manipulating, comparing, and formatting
  * dates. It handles leap years, date validation, and basic calculations.
+ * Years after 5,000,000 are invalid, so the day number of a date always fits in an int.
+ * Dates obtained from {@link #valueOf(int, int, int)} are immutable and shared,
+ * so they can be handed out without copying; their set methods throw
+ * UnsupportedOperationException.
  *
  * @author Daniel Shimon
  * @version (Maman 12 )
@@ -13,18 +20,21 @@ public class Date {
     private int _day;
     private int _month;
     private int _year;
+    private int _epochDay; // day number of this date, kept in sync with _day, _month and _year
+    private final boolean _immutable; // true for the shared instances handed out by valueOf
 
     // Constants
     private static final int DEFAULT_DAY = 1;   // Default day
     private static final int DEFAULT_MONTH = 1;  // Default month
     private static final int DEFAULT_YEAR = 2000;  // Default year
-    private static final int MIN_DAY = 1;      // Minimum possible day in a month
-    private static final int MAX_DAY = 31;      // Maximum possible day in a month
-    private static final int FIRST_MONTH = 1;  // Numerical representation of the first month
-    private static final int LAST_MONTH = 12;  // Numerical representation of the last month
-    private static final int DAYS_IN_MONTH = 30; // number of days in most months
     private static final int DAYS_IN_FEBRUARY = 28;  // Number of days in February for a regular year
-    private static final int DAYS_IN_LEAP_FEBRUARY = 29;  // Number of days in February for a leap year
+    private static final int FIRST_CACHED_YEAR = 1900;  // First year with canonical instances
+    private static final int LAST_CACHED_YEAR = 2199;  // Last year with canonical instances
+    private static final int MAX_YEAR = 5_000_000;  // Last valid year, so every day number and difference fits in an int
+    private static final int INVALID_EPOCH_DAY = -1;  // Returned by parseEpochDay for text that is not a valid date
+    private static final int MAX_DAY_DIGITS = 2;  // Most digits in the day and month fields of DD/MM/YYYY
+    private static final int MAX_YEAR_DIGITS = 7;  // Most digits in the year field, as many as MAX_YEAR has
+    private static final char SEPARATOR = '/';
 
     // Constants for month numbers
     private static final int JANUARY = 1;
@@ -40,6 +50,11 @@ public class Date {
     private static final int NOVEMBER = 11;
     private static final int DECEMBER = 12;
 
+    // Canonical immutable instances, indexed by day number from the first cached year, created on first use
+    private static final int FIRST_CACHED_DAY = calculateDate(DEFAULT_DAY, JANUARY, FIRST_CACHED_YEAR);
+    private static final AtomicReferenceArray<Date> CACHE =
+            new AtomicReferenceArray<>(calculateDate(DEFAULT_DAY, JANUARY, LAST_CACHED_YEAR + 1) - FIRST_CACHED_DAY);
+
 
     //Constructor
     /**
@@ -50,15 +65,23 @@ public class Date {
      * @param year  the year ( 4 digits)
      */
     public Date(int day, int month, int year) {
+        this(day, month, year, false);
+    }
+
+    // Creates a valid date, immutable or not
+    private Date(int day, int month, int year, boolean immutable) {
+        _immutable = immutable;
         if (isValidDate(day, month, year)) {
             _day = day;
             _month = month;
             _year = year;
         } else {
+            Metrics.DATE_DEFAULTED.increment();
             _day = DEFAULT_DAY;
             _month = DEFAULT_MONTH;
             _year = DEFAULT_YEAR;
         }
+        _epochDay = calculateDate(_day, _month, _year);
     }
 
     // Copy constructor
@@ -68,48 +91,88 @@ public class Date {
      * @param other the Date to be copied
      */
     public Date(Date other) {
+        _immutable = false;
         _day = other._day;
         _month = other._month;
         _year = other._year;
+        _epochDay = other._epochDay;
     }
 
-    // Checks if the given date is valid.
-    private boolean isValidDate(int day, int month, int year) {
-        // Check day range
-        if (day < MIN_DAY || day > MAX_DAY) {
-            return false;
-        }
-        // Check month range
-        if (month < FIRST_MONTH || month > LAST_MONTH) {
-            return false;
-        }
-        // Year must be positive
-        if (year <= 1) {
-            return false;
+    /**
+     * Returns the shared immutable Date for the specified day, month, and year.
+     * An invalid date gives the default date, as in the constructor.
+     * The set methods of the returned Date throw UnsupportedOperationException.
+     *
+     * @param day   the day in the month(1-31)
+     * @param month the month in the year(1-12)
+     * @param year  the year ( 4 digits)
+     * @return an immutable Date, the same instance for equal dates in the cached range
+     */
+    public static Date valueOf(int day, int month, int year) {
+        if (!isValidDate(day, month, year)) {
+            Metrics.DATE_DEFAULTED.increment();
+            day = DEFAULT_DAY;
+            month = DEFAULT_MONTH;
+            year = DEFAULT_YEAR;
         }
-        // Check for appropriate day count for February in leap years
-        if (month == FEBRUARY) {
-            return day <= DAYS_IN_FEBRUARY || (day == DAYS_IN_LEAP_FEBRUARY && isLeapYear(year));
+        if (year < FIRST_CACHED_YEAR || year > LAST_CACHED_YEAR)
+            return new Date(day, month, year, true);
+        int index = calculateDate(day, month, year) - FIRST_CACHED_DAY;
+        Date date = CACHE.get(index);
+        if (date == null) {
+            CACHE.compareAndSet(index, null, new Date(day, month, year, true));
+            date = CACHE.get(index);
         }
-        // Check for 30-day months
-        if (month == APRIL || month == JUNE || month == SEPTEMBER || month == NOVEMBER) {
-            return day <= DAYS_IN_MONTH;
+        return date;
+    }
+
+    /**
+     * Returns the shared immutable Date equal to the given Date.
+     *
+     * @param other the Date to look up
+     * @return the given Date if it is already immutable, otherwise an immutable Date equal to it
+     */
+    public static Date valueOf(Date other) {
+        if (other._immutable)
+            return other;
+        return valueOf(other._day, other._month, other._year);
+    }
+
+    /**
+     * Returns the shared immutable Date with the given day number.
+     *
+     * @param epochDay the day number, as returned by {@link #getEpochDay()}
+     * @return an immutable Date
+     */
+    public static Date ofEpochDay(int epochDay) {
+        int index = epochDay - FIRST_CACHED_DAY;
+        if (index >= 0 && index < CACHE.length()) {
+            Date date = CACHE.get(index); // the cache is indexed by day number, so a hit needs no fields
+            if (date != null)
+                return date;
         }
-        return true;
+        int year = CalendarTable.yearOf(epochDay);
+        int dayOfYear = epochDay - CalendarTable.yearStart(year);
+        int month = CalendarTable.monthOf(dayOfYear, year);
+        return valueOf(dayOfYear - CalendarTable.monthStart(month, year), month, year);
+    }
+
+    // Refuses to change a shared immutable Date, as the change would reach every holder of it
+    private void checkMutable() {
+        if (_immutable)
+            throw new UnsupportedOperationException("Date " + this + " is immutable, copy it to change it");
     }
 
-    //Determines whether the given year is a leap year.
-    private boolean isLeapYear(int year) {
-        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    // Checks if the given date is valid.
+    private static boolean isValidDate(int day, int month, int year) {
+        // Year must be positive and low enough for its day numbers to fit in an int,
+        // the table checks the month and the day count of the month
+        return year > 1 && year <= MAX_YEAR && CalendarTable.isValid(day, month, year);
     }
 
     // computes the day number since the beginning of the Christian counting of years
-    private int calculateDate(int day, int month, int year) {
-        if (month < 3) {
-            year--;
-            month = month + 12;
-        }
-        return 365 * year + year / 4 - year / 100 + year / 400 + ((month + 1) * 306) / 10 + (day - 62);
+    private static int calculateDate(int day, int month, int year) {
+        return CalendarTable.epochDay(day, month, year);
     }
 
     //get methods
@@ -144,38 +207,77 @@ public class Date {
     }
 
 
+    /**
+     * Gets the day number of this date, counted from the beginning of the Christian counting of years.
+     * Two dates are equal exactly when their day numbers are equal.
+     *
+     * @return the day number
+     */
+    public int getEpochDay() {
+        return _epochDay;
+    }
+
+
+    /**
+     * Tells whether this Date is immutable, as returned by {@link #valueOf(int, int, int)}.
+     *
+     * @return true if the set methods of this Date throw UnsupportedOperationException
+     */
+    public boolean isImmutable() {
+        return _immutable;
+    }
+
+
     // set methods
 
     /**
      * Sets the day of the month if the resulting date is valid.
      *
      * @param dayToSet the new day
+     * @throws UnsupportedOperationException if this Date is immutable
      */
     public void setDay(int dayToSet) {
-        if (isValidDate(dayToSet, _month, _year))
+        checkMutable();
+        if (isValidDate(dayToSet, _month, _year)) {
             _day = dayToSet;
+            _epochDay = calculateDate(_day, _month, _year);
+        } else {
+            Metrics.DATE_SET_IGNORED.increment();
+        }
     }
 
 
     /**
-     * Sets the day of the month if the resulting date is valid.
+     * Sets the month if the resulting date is valid.
      *
      * @param monthToSet the new month
+     * @throws UnsupportedOperationException if this Date is immutable
      */
     public void setMonth(int monthToSet) {
-        if (isValidDate(_day, monthToSet, _year))
+        checkMutable();
+        if (isValidDate(_day, monthToSet, _year)) {
             _month = monthToSet;
+            _epochDay = calculateDate(_day, _month, _year);
+        } else {
+            Metrics.DATE_SET_IGNORED.increment();
+        }
     }
 
 
     /**
-     * Sets the day of the month if the resulting date is valid.
+     * Sets the year if the resulting date is valid.
      *
      * @param yearToSet the new year
+     * @throws UnsupportedOperationException if this Date is immutable
      */
     public void setYear(int yearToSet) {
-        if (isValidDate(_day, _month, yearToSet))
+        checkMutable();
+        if (isValidDate(_day, _month, yearToSet)) {
             _year = yearToSet;
+            _epochDay = calculateDate(_day, _month, _year);
+        } else {
+            Metrics.DATE_SET_IGNORED.increment();
+        }
     }
 
 
@@ -187,7 +289,7 @@ public class Date {
      * @return true if the dates are equal, false otherwise
      */
     public boolean equals(Date other) {
-        return ((_day == other._day) && (_month == other._month) && (_year == other._year));
+        return this == other || _epochDay == other._epochDay;
     }
 
 
@@ -198,8 +300,8 @@ public class Date {
      * @return true if this Date is before the other Date, false otherwise
      */
     public boolean before(Date other) {
-        return this.getYear() < other.getYear() || (this.getYear() == other.getYear() && (this.getMonth() < other.getMonth() || (this.getMonth() == other.getMonth() && this.getDay() < other.getDay())));
-            }
+        return _epochDay < other._epochDay;
+    }
 
 
 
@@ -210,7 +312,7 @@ public class Date {
      * @return true if this Date is after the other Date, false otherwise
      */
     public boolean after(Date other) {
-        return other.before(this);
+        return _epochDay > other._epochDay;
     }
 
 
@@ -221,14 +323,7 @@ public class Date {
      * @return the difference in days
      */
     public int difference(Date other) {
-        int difference;
-        int thisDateNum = calculateDate(this.getDay(), this.getMonth(), this.getYear());
-        int otherDateNum = calculateDate(other.getDay(), other.getMonth(), other.getYear());
-        if (thisDateNum > otherDateNum)
-            difference = thisDateNum - otherDateNum;
-        else
-            difference = otherDateNum - thisDateNum;
-        return difference;
+        return Math.abs(_epochDay - other._epochDay);
     }
 
 
@@ -243,16 +338,193 @@ public class Date {
         int newYear = this._year + num;
         int adjustedDay = this._day;
 
-        // Handle February 28th/29th cases directly using if statements
-        if (this._month == FEBRUARY && this._day == DAYS_IN_FEBRUARY) {
-            if (isLeapYear(newYear)) {
-                adjustedDay = DAYS_IN_LEAP_FEBRUARY;
+        // February 28th and 29th move to the last day of February in the new year
+        if (this._month == FEBRUARY && this._day >= DAYS_IN_FEBRUARY)
+            adjustedDay = CalendarTable.daysInMonth(FEBRUARY, newYear);
+        return new Date(adjustedDay, this._month, newYear);
+    }
+
+    /**
+     * Returns the immutable Date with the year replaced, keeping the rule of {@link #setYear(int)}.
+     *
+     * @param yearToSet the new year
+     * @return an immutable Date in the given year, or an immutable Date equal to this one if the result would be invalid
+     */
+    public Date withYear(int yearToSet) {
+        if (isValidDate(_day, _month, yearToSet))
+            return valueOf(_day, _month, yearToSet);
+        return valueOf(this);
+    }
+
+    /**
+     * Parses a date in the format DD/MM/YYYY, as written by toString. The day and the month
+     * may also have a single digit. An invalid date gives the default date, as in the constructor.
+     *
+     * @param text the text to parse
+     * @return an immutable Date
+     * @throws IllegalArgumentException if the text is not in the format DD/MM/YYYY
+     */
+    public static Date parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses a date in the format DD/MM/YYYY from part of a text, without copying it.
+     * An invalid date gives the default date, as in the constructor.
+     *
+     * @param text  the text holding the date
+     * @param start the index of the first character of the date
+     * @param end   the index after the last character of the date
+     * @return an immutable Date
+     * @throws IllegalArgumentException if the part is not in the format DD/MM/YYYY
+     */
+    public static Date parse(CharSequence text, int start, int end) {
+        long fields = parseFields(text, start, end);
+        if (fields < 0)
+            throw new IllegalArgumentException("Not a DD/MM/YYYY date: " + text.subSequence(start, end));
+        return valueOf(fieldDay(fields), fieldMonth(fields), fieldYear(fields));
+    }
+
+    /**
+     * Parses a date in the format DD/MM/YYYY from part of a text, without creating any object.
+     *
+     * @param text  the text holding the date
+     * @param start the index of the first character of the date
+     * @param end   the index after the last character of the date
+     * @return the day number of the date, or -1 if the part is not in the format or is not a valid date
+     */
+    public static int parseEpochDay(CharSequence text, int start, int end) {
+        return toEpochDay(parseFields(text, start, end));
+    }
+
+    /**
+     * Parses a date in the format DD/MM/YYYY from ASCII bytes, without creating any object.
+     *
+     * @param bytes the bytes holding the date
+     * @param start the index of the first byte of the date
+     * @param end   the index after the last byte of the date
+     * @return the day number of the date, or -1 if the bytes are not in the format or are not a valid date
+     */
+    public static int parseEpochDay(byte[] bytes, int start, int end) {
+        return toEpochDay(parseFields(bytes, null, start, end));
+    }
+
+    // Parses DD/MM/YYYY from text into packed fields, or returns -1 if the text is not in the format
+    private static long parseFields(CharSequence text, int start, int end) {
+        return parseFields(null, text, start, end);
+    }
+
+    // Parses DD/MM/YYYY from the bytes, or the text if bytes is null, into packed fields, or returns -1 if not in the format
+    private static long parseFields(byte[] bytes, CharSequence text, int start, int end) {
+        long fields = 0;
+        int field = 0;
+        int digits = 0;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int c = bytes != null ? bytes[i] : text.charAt(i); // the JIT moves the test out of the loop
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > (field == 2 ? MAX_YEAR_DIGITS : MAX_DAY_DIGITS))
+                    return -1;
+            } else if (c == SEPARATOR && field < 2 && digits > 0) {
+                fields = putField(fields, field++, value);
+                digits = 0;
+                value = 0;
             } else
-                adjustedDay = DAYS_IN_FEBRUARY;
-        } else if (this._month == FEBRUARY && this._day == DAYS_IN_LEAP_FEBRUARY && !isLeapYear(newYear)) {
-            adjustedDay = DAYS_IN_FEBRUARY;
+                return -1;
         }
-        return new Date(adjustedDay, this._month, newYear);
+        if (field != 2 || digits == 0)
+            return -1;
+        return putField(fields, field, value);
+    }
+
+    // Packs a parsed field: the day in bits 0-7, the month in bits 8-15 and the year in bits 16-47
+    private static long putField(long fields, int field, int value) {
+        return fields | ((long) value << (field * 8));
+    }
+
+    // The day of packed fields
+    private static int fieldDay(long fields) {
+        return (int) (fields & 0xFF);
+    }
+
+    // The month of packed fields
+    private static int fieldMonth(long fields) {
+        return (int) ((fields >>> 8) & 0xFF);
+    }
+
+    // The year of packed fields
+    private static int fieldYear(long fields) {
+        return (int) (fields >>> 16);
+    }
+
+    // The day number of packed fields, or -1 if they are missing or not a valid date
+    private static int toEpochDay(long fields) {
+        if (fields < 0 || !isValidDate(fieldDay(fields), fieldMonth(fields), fieldYear(fields)))
+            return INVALID_EPOCH_DAY;
+        return calculateDate(fieldDay(fields), fieldMonth(fields), fieldYear(fields));
+    }
+
+    /**
+     * Appends the Date in the format DD/MM/YYYY to the builder.
+     *
+     * @param builder the builder to append to
+     * @return the builder
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        if (_day < 10)
+            builder.append('0');
+        builder.append(_day).append(SEPARATOR);
+        if (_month < 10)
+            builder.append('0');
+        return builder.append(_month).append(SEPARATOR).append(_year);
+    }
+
+    /**
+     * Writes the Date in the format DD/MM/YYYY into the array.
+     *
+     * @param destination the array to write into
+     * @param offset      the index of the first character to write
+     * @return the index after the last character written
+     */
+    public int formatTo(char[] destination, int offset) {
+        destination[offset++] = (char) ('0' + _day / 10);
+        destination[offset++] = (char) ('0' + _day % 10);
+        destination[offset++] = SEPARATOR;
+        destination[offset++] = (char) ('0' + _month / 10);
+        destination[offset++] = (char) ('0' + _month % 10);
+        destination[offset++] = SEPARATOR;
+        int end = offset + yearDigits(_year);
+        for (int i = end - 1, year = _year; i >= offset; i--, year /= 10)
+            destination[i] = (char) ('0' + year % 10);
+        return end;
+    }
+
+    /**
+     * Writes the Date in the format DD/MM/YYYY as ASCII bytes at the buffer's position.
+     *
+     * @param buffer the buffer to write into
+     */
+    public void formatTo(ByteBuffer buffer) {
+        buffer.put((byte) ('0' + _day / 10));
+        buffer.put((byte) ('0' + _day % 10));
+        buffer.put((byte) SEPARATOR);
+        buffer.put((byte) ('0' + _month / 10));
+        buffer.put((byte) ('0' + _month % 10));
+        buffer.put((byte) SEPARATOR);
+        int digits = yearDigits(_year);
+        int start = buffer.position();
+        for (int i = start + digits - 1, year = _year; i >= start; i--, year /= 10)
+            buffer.put(i, (byte) ('0' + year % 10));
+        buffer.position(start + digits);
+    }
+
+    // Number of decimal digits of a positive year
+    private static int yearDigits(int year) {
+        int digits = 1;
+        while ((year /= 10) != 0)
+            digits++;
+        return digits;
     }
 
     /**
@@ -261,12 +533,6 @@ public class Date {
      * @return the string representation of the Date
      */
     public String toString() {
-        String dayString = String.valueOf(_day);
-        String monthString = String.valueOf(_month);
-        if (_day < 10)
-            dayString = "0" + dayString;
-        if (_month < 10)
-            monthString = "0" + monthString;
-        return dayString + "/" + monthString + "/" + _year;
+        return appendTo(new StringBuilder(10)).toString();
     }
 }
@@ -0,0 +1,201 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts durations in nanoseconds in buckets of logarithmic
+ * width, in the manner of an HDR histogram: every power of two is split into eight
+ * buckets, so any value from zero to the largest long is kept with an error of at most
+ * one eighth, in a fixed table of a few hundred counters. Recording is a few atomic
+ * additions and never allocates, so it can be called from many threads at once.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class LatencyHistogram {
+
+    // Constants
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;   // Buckets per power of two
+    private static final int NO_OF_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    // Instance variables
+    private final String _name;
+    private final AtomicLongArray _counts = new AtomicLongArray(NO_OF_BUCKETS);
+    private final LongAdder _total = new LongAdder();
+    private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param name the name the histogram is exported under
+     */
+    public LatencyHistogram(String name) {
+        _name = name;
+    }
+
+    /**
+     * Gets the name of the histogram.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Records one duration. A negative duration is recorded as zero.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        _counts.getAndIncrement(bucketOf(nanos));
+        _total.add(nanos);
+        _max.accumulate(nanos);
+    }
+
+    /**
+     * Takes a copy of the counts. Durations recorded while the copy is taken may or may not be in it.
+     *
+     * @return a snapshot of the histogram
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[NO_OF_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < NO_OF_BUCKETS; i++) {
+            counts[i] = _counts.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(_name, counts, count, _total.sum(), _max.get());
+    }
+
+    /**
+     * Forgets every recorded duration.
+     */
+    public void reset() {
+        for (int i = 0; i < NO_OF_BUCKETS; i++)
+            _counts.set(i, 0);
+        _total.reset();
+        _max.reset();
+    }
+
+    // The bucket of a non-negative value: the top bits of the value after its highest one bit
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // The largest value that falls in the bucket
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of the counts of a histogram at one moment.
+     */
+    public static final class Snapshot {
+
+        // Instance variables
+        private final String _name;
+        private final long[] _counts;
+        private final long _count;
+        private final long _total;
+        private final long _max;
+
+        private Snapshot(String name, long[] counts, long count, long total, long max) {
+            _name = name;
+            _counts = counts;
+            _count = count;
+            _total = total;
+            _max = max;
+        }
+
+        /**
+         * Gets the name of the histogram.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Gets the number of recorded durations.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return _count;
+        }
+
+        /**
+         * Gets the mean of the recorded durations.
+         *
+         * @return the mean in nanoseconds, 0 if nothing was recorded
+         */
+        public double getMean() {
+            return _count == 0 ? 0 : (double) _total / _count;
+        }
+
+        /**
+         * Gets the longest recorded duration.
+         *
+         * @return the maximum in nanoseconds, 0 if nothing was recorded
+         */
+        public long getMax() {
+            return _max;
+        }
+
+        /**
+         * Gets the duration that the given percentage of the recorded durations do not exceed,
+         * rounded up to the end of its bucket.
+         *
+         * @param percentile the percentage, from 0 to 100
+         * @return the duration in nanoseconds, 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * _count);
+            long seen = 0;
+            for (int i = 0; i < _counts.length; i++) {
+                seen += _counts[i];
+                if (seen >= Math.max(rank, 1))
+                    return Math.min(highestValueOf(i), _max);
+            }
+            return 0;
+        }
+
+        /**
+         * Appends the snapshot as lines of name and value: the count, the mean, the median,
+         * the 99th and 99.9th percentiles and the maximum, in nanoseconds.
+         *
+         * @param builder the builder to append to
+         * @return the builder
+         */
+        public StringBuilder appendTo(StringBuilder builder) {
+            builder.append(_name).append("_count ").append(_count).append('\n');
+            builder.append(_name).append("_mean_ns ").append(Math.round(getMean())).append('\n');
+            builder.append(_name).append("_p50_ns ").append(getValueAtPercentile(50)).append('\n');
+            builder.append(_name).append("_p99_ns ").append(getValueAtPercentile(99)).append('\n');
+            builder.append(_name).append("_p999_ns ").append(getValueAtPercentile(99.9)).append('\n');
+            return builder.append(_name).append("_max_ns ").append(_max).append('\n');
+        }
+
+        /**
+         * Returns the snapshot as lines of name and value.
+         *
+         * @return the string representation
+         */
+        public String toString() {
+            return appendTo(new StringBuilder()).toString();
+        }
+    }
+}
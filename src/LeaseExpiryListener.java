@@ -0,0 +1,27 @@
+/**
+ * A LeaseExpiryListener is told by a LeaseExpiryScheduler when a lease enters its
+ * last {@link Apartment#MAX_RENT_DAYS_LEFT} days and when it expires.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public interface LeaseExpiryListener {
+
+    /**
+     * Called when the days left in the lease drop to {@link Apartment#MAX_RENT_DAYS_LEFT} or fewer,
+     * which is when the tenant can be changed.
+     *
+     * @param apartment the apartment whose lease is ending
+     * @param today     the date the scheduler was advanced to
+     */
+    void rentalEnding(Apartment apartment, Date today);
+
+    /**
+     * Called when the lease is over, so daysLeft returns -1.
+     *
+     * @param apartment the apartment whose lease expired
+     * @param today     the date the scheduler was advanced to
+     */
+    void rentalExpired(Apartment apartment, Date today);
+}
@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The LeaseExpiryScheduler class tells its listeners when leases enter their last
+ * {@link Apartment#MAX_RENT_DAYS_LEFT} days and when they expire, without polling
+ * every apartment. Each lease sits in a calendar queue bucket keyed by the day its
+ * next event is due, so advancing the clock only touches the leases that are due.
+ * The scheduler observes its apartments and moves a lease to new buckets when its
+ * rental end date changes.
+ * A lease that is already ending or expired when it is added, or that a change of end
+ * date moves into its last days or past its end, is reported on the next call to advanceTo.
+ * Each event is reported once per entry: a lease already reported as ending or expired is
+ * not reported again when its end date changes but it stays ending or expired, only after
+ * a new end date takes it out of that state and it later comes due again.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class LeaseExpiryScheduler implements ApartmentObserver {
+
+    // Instance variables
+    private int _today; // epoch day of the scheduler's clock
+    private final Map<Apartment, Lease> _leases = new IdentityHashMap<>();
+    private final TreeMap<Integer, Set<Lease>> _endingQueue = new TreeMap<>();  // keyed by the first day with few days left
+    private final TreeMap<Integer, Set<Lease>> _expiryQueue = new TreeMap<>();  // keyed by the day after the rental end
+    private final List<LeaseExpiryListener> _listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a new scheduler whose clock is set to the given date.
+     *
+     * @param today the current date
+     */
+    public LeaseExpiryScheduler(Date today) {
+        _today = today.getEpochDay();
+    }
+
+    /**
+     * Adds a listener to be told about leases that are ending or expired.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(LeaseExpiryListener listener) {
+        _listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(LeaseExpiryListener listener) {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Starts watching the lease of the given apartment.
+     *
+     * @param apartment the apartment to watch
+     * @return true if the apartment was added, false if it was already watched
+     */
+    public boolean add(Apartment apartment) {
+        synchronized (this) {
+            if (_leases.containsKey(apartment))
+                return false;
+            Lease lease = new Lease(apartment, apartment.getRentalEndDate().getEpochDay());
+            _leases.put(apartment, lease);
+            schedule(lease);
+        }
+        apartment.addObserver(this); // outside the lock, a thread changing the apartment may hold a lock on it
+        afterChange(apartment);      // picks up a change made before the scheduler was observing
+        return true;
+    }
+
+    /**
+     * Stops watching the lease of the given apartment.
+     *
+     * @param apartment the apartment to stop watching
+     * @return true if the apartment was removed, false if it was not watched
+     */
+    public boolean remove(Apartment apartment) {
+        synchronized (this) {
+            Lease lease = _leases.remove(apartment);
+            if (lease == null)
+                return false;
+            unschedule(lease);
+        }
+        apartment.removeObserver(this);
+        return true;
+    }
+
+    /**
+     * Gets the number of watched leases.
+     *
+     * @return the number of leases
+     */
+    public synchronized int size() {
+        return _leases.size();
+    }
+
+    /**
+     * Moves the clock forward to the given date and tells the listeners about every
+     * lease that became due on the way. For each lease, the ending event comes before
+     * the expiry event. A date before the current clock is ignored.
+     *
+     * @param today the new current date
+     */
+    public void advanceTo(Date today) {
+        List<Lease> ending = new ArrayList<>();
+        List<Lease> expired = new ArrayList<>();
+        synchronized (this) {
+            int target = today.getEpochDay();
+            if (target < _today)
+                return;
+            _today = target;
+            drain(_endingQueue, target, ending);
+            for (Lease lease : ending)
+                lease._endingNotified = true;
+            drain(_expiryQueue, target, expired);
+            for (Lease lease : expired)
+                lease._expiryNotified = true;
+        }
+        for (Lease lease : ending)
+            for (LeaseExpiryListener listener : _listeners)
+                listener.rentalEnding(lease._apartment, today);
+        for (Lease lease : expired)
+            for (LeaseExpiryListener listener : _listeners)
+                listener.rentalExpired(lease._apartment, today);
+    }
+
+    /**
+     * Does nothing, the lease is moved once the change is done.
+     *
+     * @param apartment the apartment about to change
+     */
+    public void beforeChange(Apartment apartment) {
+    }
+
+    /**
+     * Moves the lease to new buckets if its rental end date changed.
+     *
+     * @param apartment the apartment that changed
+     */
+    public synchronized void afterChange(Apartment apartment) {
+        Lease lease = _leases.get(apartment);
+        int end = apartment.getRentalEndDate().getEpochDay();
+        if (lease == null || lease._end == end)
+            return;
+        unschedule(lease);
+        lease._end = end;
+        if (endingDay(end) > _today)
+            lease._endingNotified = false;
+        if (expiryDay(end) > _today)
+            lease._expiryNotified = false;
+        schedule(lease);
+    }
+
+    // Puts the lease in the buckets of the events it has not been told about yet
+    private void schedule(Lease lease) {
+        if (!lease._endingNotified)
+            _endingQueue.computeIfAbsent(endingDay(lease._end), key -> new HashSet<>()).add(lease);
+        if (!lease._expiryNotified)
+            _expiryQueue.computeIfAbsent(expiryDay(lease._end), key -> new HashSet<>()).add(lease);
+    }
+
+    // Takes the lease out of its buckets
+    private void unschedule(Lease lease) {
+        removeFrom(_endingQueue, endingDay(lease._end), lease);
+        removeFrom(_expiryQueue, expiryDay(lease._end), lease);
+    }
+
+    // Moves every lease due on or before the given day from the queue to the list
+    private static void drain(TreeMap<Integer, Set<Lease>> queue, int day, List<Lease> due) {
+        while (!queue.isEmpty() && queue.firstKey() <= day)
+            due.addAll(queue.pollFirstEntry().getValue());
+    }
+
+    // Removes the lease from the bucket of the day, dropping the bucket when it empties
+    private static void removeFrom(TreeMap<Integer, Set<Lease>> queue, int day, Lease lease) {
+        Set<Lease> bucket = queue.get(day);
+        if (bucket != null && bucket.remove(lease) && bucket.isEmpty())
+            queue.remove(day);
+    }
+
+    // The first day on which daysLeft is at most MAX_RENT_DAYS_LEFT
+    private static int endingDay(int end) {
+        return end - Apartment.MAX_RENT_DAYS_LEFT;
+    }
+
+    // The first day on which daysLeft is -1
+    private static int expiryDay(int end) {
+        return end + 1;
+    }
+
+    // A watched lease and the events already reported for it
+    private static class Lease {
+        private final Apartment _apartment;
+        private int _end; // epoch day of the rental end date
+        private boolean _endingNotified;
+        private boolean _expiryNotified;
+
+        private Lease(Apartment apartment, int end) {
+            _apartment = apartment;
+            _end = end;
+        }
+    }
+}
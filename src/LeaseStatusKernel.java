@@ -0,0 +1,87 @@
+/**
+ * The LeaseStatusKernel class computes the days left in many leases at once, and sorts
+ * each lease into expired, inside the window in which changeTenant may replace the tenant,
+ * or active. It works on an array of rental end dates as epoch days, the way the
+ * ApartmentStore keeps them, and gives the same days left as {@link Apartment#daysLeft(Date)},
+ * -1 for a lease that ended before the reference day included.
+ * <p>
+ * The loops have no branches: the sign of the difference between the end day and the
+ * reference day is spread into a mask with a shift, and the status is a sum of two sign
+ * bits. Each loop reads one int array and writes one, a shape the JIT compiles into SIMD
+ * instructions that handle several leases per instruction where the processor has them,
+ * and into plain scalar code where it does not. Writing both arrays in one loop, or the
+ * status as bytes, keeps the JIT from doing so, which is why the status codes are ints
+ * and classify makes two passes.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public final class LeaseStatusKernel {
+
+    /** The lease ended before the reference day. */
+    public static final int EXPIRED = 0;
+    /** The lease has at most {@link Apartment#MAX_RENT_DAYS_LEFT} days left, so the tenant may be changed. */
+    public static final int IN_WINDOW = 1;
+    /** The lease has more than {@link Apartment#MAX_RENT_DAYS_LEFT} days left. */
+    public static final int ACTIVE = 2;
+
+    // Not to be instantiated
+    private LeaseStatusKernel() {
+    }
+
+    /**
+     * Computes the days left and the status of the first length leases.
+     *
+     * @param endDays      the rental end dates, as epoch days
+     * @param length       the number of leases
+     * @param referenceDay the day to count from, as an epoch day
+     * @param daysLeft     the array to fill with the days left, at least length long
+     * @param status       the array to fill with EXPIRED, IN_WINDOW or ACTIVE, at least length long
+     */
+    public static void classify(int[] endDays, int length, int referenceDay, int[] daysLeft, int[] status) {
+        checkLength(endDays, length);
+        checkLength(daysLeft, length);
+        checkLength(status, length);
+        daysLeft(endDays, length, referenceDay, daysLeft);
+        for (int i = 0; i < length; i++) {
+            int difference = endDays[i] - referenceDay;
+            status[i] = (difference >> 31) + 1 + ((Apartment.MAX_RENT_DAYS_LEFT - difference) >>> 31);
+        }
+    }
+
+    /**
+     * Computes the days left of the first length leases.
+     *
+     * @param endDays      the rental end dates, as epoch days
+     * @param length       the number of leases
+     * @param referenceDay the day to count from, as an epoch day
+     * @param daysLeft     the array to fill with the days left, at least length long
+     */
+    public static void daysLeft(int[] endDays, int length, int referenceDay, int[] daysLeft) {
+        checkLength(endDays, length);
+        checkLength(daysLeft, length);
+        for (int i = 0; i < length; i++) {
+            int difference = endDays[i] - referenceDay;
+            daysLeft[i] = difference | (difference >> 31);  // -1 when the difference is negative
+        }
+    }
+
+    /**
+     * Gets the status of one lease from its days left.
+     *
+     * @param daysLeft the days left, -1 if the lease ended
+     * @return EXPIRED, IN_WINDOW or ACTIVE
+     */
+    public static int statusOf(int daysLeft) {
+        if (daysLeft < 0)
+            return EXPIRED;
+        return daysLeft <= Apartment.MAX_RENT_DAYS_LEFT ? IN_WINDOW : ACTIVE;
+    }
+
+    // Checks that an array holds at least length values
+    private static void checkLength(int[] array, int length) {
+        if (length < 0 || length > array.length)
+            throw new IllegalArgumentException("Length " + length + " does not fit an array of " + array.length);
+    }
+}
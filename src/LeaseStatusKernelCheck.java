@@ -0,0 +1,83 @@
+/**
+ * The LeaseStatusKernelCheck class checks the LeaseStatusKernel against the Apartment
+ * methods it stands in for. For a few reference days, around leap days and year ends, it
+ * builds an apartment for every rental end date from {@value #MAX_OFFSET} days before the
+ * reference day to as many after it, so the ends on the day itself, the day before, the
+ * last day of the window and the first day after it are all covered. classify and daysLeft
+ * must give the days left of Apartment.daysLeft, classify the status statusOf gives those
+ * days, and changeTenant on the reference day must be refused exactly for an ACTIVE lease.
+ * The program exits with status 1 if any answer differs.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class LeaseStatusKernelCheck {
+
+    // Constants
+    private static final int MAX_OFFSET = 400;     // Days checked on each side of the reference day
+    private static final int LEASE_DAYS = 365;     // Length of the leases built for the check
+    private static final Date[] REFERENCE_DATES = {Date.valueOf(1, 6, 2010), Date.valueOf(31, 12, 2023),
+            Date.valueOf(1, 1, 2024), Date.valueOf(29, 2, 2024), Date.valueOf(1, 3, 2100)};
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        int length = 2 * MAX_OFFSET + 1;
+        long checked = 0;
+        long mismatches = 0;
+        for (Date reference : REFERENCE_DATES) {
+            int referenceDay = reference.getEpochDay();
+            Apartment[] apartments = new Apartment[length];
+            int[] endDays = new int[length + 1];    // one spare value, which the kernel must not touch
+            for (int i = 0; i < length; i++) {
+                apartments[i] = newApartment(referenceDay - MAX_OFFSET + i);
+                endDays[i] = apartments[i].getRentalEndDate().getEpochDay();
+            }
+            int[] daysLeft = new int[length + 1];
+            int[] status = new int[length + 1];
+            int[] daysLeftOnly = new int[length + 1];
+            daysLeft[length] = status[length] = daysLeftOnly[length] = Integer.MIN_VALUE;
+            LeaseStatusKernel.classify(endDays, length, referenceDay, daysLeft, status);
+            LeaseStatusKernel.daysLeft(endDays, length, referenceDay, daysLeftOnly);
+            if (daysLeft[length] != Integer.MIN_VALUE || status[length] != Integer.MIN_VALUE ||
+                    daysLeftOnly[length] != Integer.MIN_VALUE)
+                mismatches += report("length", reference, length);
+            for (int i = 0; i < length; i++) {
+                checked++;
+                int offset = i - MAX_OFFSET;
+                int expected = apartments[i].daysLeft(reference);
+                if (daysLeft[i] != expected)
+                    mismatches += report("classify days left " + daysLeft[i] + " instead of " + expected, reference, offset);
+                if (daysLeftOnly[i] != expected)
+                    mismatches += report("daysLeft " + daysLeftOnly[i] + " instead of " + expected, reference, offset);
+                if (status[i] != LeaseStatusKernel.statusOf(expected))
+                    mismatches += report("classify status " + status[i], reference, offset);
+                boolean accepted = apartments[i].changeTenant(reference,
+                        new Person("Next", 1, 1, 2000, "987654321"), apartments[i].getPrice());
+                if (accepted != (status[i] != LeaseStatusKernel.ACTIVE))
+                    mismatches += report("changeTenant " + accepted + " with status " + status[i], reference, offset);
+            }
+        }
+        System.out.printf("%,d leases checked, %d mismatches%n", checked, mismatches);
+        if (mismatches != 0)
+            System.exit(1);
+    }
+
+    // An apartment whose lease ends on the given day
+    private static Apartment newApartment(int endDay) {
+        Date start = Date.ofEpochDay(endDay - LEASE_DAYS);
+        Date end = Date.ofEpochDay(endDay);
+        return new Apartment(3, 80, 5000, new Person("Current", 1, 1, 1980, "123456789"),
+                start.getDay(), start.getMonth(), start.getYear(), end.getDay(), end.getMonth(), end.getYear());
+    }
+
+    // Prints a mismatch and counts it
+    private static int report(String what, Date reference, int offset) {
+        System.out.println("Mismatch in " + what + " for an end " + offset + " days from " + reference);
+        return 1;
+    }
+}
@@ -1,16 +1,92 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The Main class launches the ApartmentServer and the ApartmentLoadGenerator.
+ * <p>
+ * Usage:
+ * <ul>
+ *     <li>{@code java Main server [port] [apartments]} serves the given number of generated
+ *     apartments on the port, 8080 and 10,000 by default, until the process is stopped</li>
+ *     <li>{@code java Main load [port] [apartments] [clients] [seconds] [pipeline] [batch]} runs the
+ *     load generator against a server started as above, by default with 10,000 clients for 10 seconds,
+ *     each sending 4 pipelined requests of one call</li>
+ *     <li>{@code java Main demo [clients] [seconds] [pipeline] [batch]} starts a server in the same
+ *     process on a free port and runs the load generator against it, by default with 1,000 clients</li>
+ * </ul>
+ * Each client holds a connection open, and a connection takes a file descriptor at each end,
+ * so the load of more than a few thousand clients is best run from a process of its own.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
 
-//TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
-// click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
 public class Main {
-    public static void main(String[] args) {
-        //TIP Press <shortcut actionId="ShowIntentionActions"/> with your caret at the highlighted text
-        // to see how IntelliJ IDEA suggests fixing it.
-        System.out.print("Hello and welcome!");
 
-        for (int i = 1; i <= 5; i++) {
-            //TIP Press <shortcut actionId="Debug"/> to start debugging your code. We have set one <icon src="AllIcons.Debugger.Db_set_breakpoint"/> breakpoint
-            // for you, but you can always add more by pressing <shortcut actionId="ToggleLineBreakpoint"/>.
-            System.out.println("i = " + i);
+    // Constants
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_APARTMENTS = 10_000;
+    private static final int DEFAULT_CLIENTS = 10_000;
+    private static final int DEFAULT_DEMO_CLIENTS = 1_000;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final int DEFAULT_PIPELINE = 4;
+    private static final int DEFAULT_BATCH = 1;
+    private static final String MAX_IDLE_CONNECTIONS = "sun.net.httpserver.maxIdleConnections";
+
+    /**
+     * Starts the server, the load generator or both.
+     *
+     * @param args the mode and its values, as in the usage above
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // The JDK server reads it once, on creating its first server, and by default keeps only 200 idle connections
+        if (System.getProperty(MAX_IDLE_CONNECTIONS) == null)
+            System.setProperty(MAX_IDLE_CONNECTIONS, "100000");
+        String mode = args.length > 0 ? args[0] : "demo";
+        switch (mode) {
+            case "server": {
+                int port = intArgument(args, 1, DEFAULT_PORT);
+                int apartments = intArgument(args, 2, DEFAULT_APARTMENTS);
+                ApartmentServer server = ApartmentServer.start(newApartments(apartments), port);
+                System.out.println("Serving " + apartments + " apartments on localhost:" + server.getPort());
+                break;
+            }
+            case "load":
+                ApartmentLoadGenerator.run(intArgument(args, 1, DEFAULT_PORT), intArgument(args, 2, DEFAULT_APARTMENTS),
+                        intArgument(args, 3, DEFAULT_CLIENTS), intArgument(args, 4, DEFAULT_SECONDS),
+                        intArgument(args, 5, DEFAULT_PIPELINE), intArgument(args, 6, DEFAULT_BATCH));
+                break;
+            case "demo":
+                try (ApartmentServer server = ApartmentServer.start(newApartments(DEFAULT_APARTMENTS), 0)) {
+                    ApartmentLoadGenerator.run(server.getPort(), DEFAULT_APARTMENTS,
+                            intArgument(args, 1, DEFAULT_DEMO_CLIENTS), intArgument(args, 2, DEFAULT_SECONDS),
+                            intArgument(args, 3, DEFAULT_PIPELINE), intArgument(args, 4, DEFAULT_BATCH));
+                }
+                break;
+            default:
+                System.out.println("Usage: java Main server|load|demo [values...]");
+        }
+    }
+
+    // Gets an integer argument, or the default if it is not given
+    private static int intArgument(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    // Creates the same apartments on every run, with leases ending around the load generator's reference date
+    private static List<Apartment> newApartments(int count) {
+        Random random = new Random(42);
+        List<Apartment> apartments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Person tenant = new Person("Tenant " + i, 1 + random.nextInt(28), 1 + random.nextInt(12),
+                    1950 + random.nextInt(40), String.format("%09d", 100_000_000 + i));
+            int startDay = 1 + random.nextInt(28), startMonth = 1 + random.nextInt(12);
+            int endDay = 1 + random.nextInt(28), endMonth = 1 + random.nextInt(12);
+            apartments.add(new Apartment(1 + random.nextInt(5), 40 + random.nextInt(120),
+                    3000 + random.nextInt(5000), tenant, startDay, startMonth, 2008, endDay, endMonth, 2010));
         }
+        return apartments;
     }
-}
\ No newline at end of file
+}
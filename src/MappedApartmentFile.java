@@ -0,0 +1,374 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The MappedApartmentFile class keeps apartments in a file as fixed width records,
+ * mapped into memory with FileChannel.map. Opening the file only maps it, and a record
+ * is read from the mapping when it is asked for, by index. The set methods write into
+ * the mapping in place.
+ * <p>
+ * Names and IDs that are not 9 digits go to a second file, the name heap, next to the
+ * record file with ".names" added to its name. A record holds the offset of its entry.
+ * <p>
+ * The record file starts with two header slots. Each holds the number of committed
+ * records, the committed length of the name heap, a sequence number and a checksum.
+ * commit forces the data to disk first, then writes the next sequence number into the
+ * older slot and forces again, so after a crash the file opens at the last commit that
+ * fully reached the disk. Records appended after that commit are dropped. In-place
+ * changes made after it may or may not survive, each field as a whole.
+ * <p>
+ * Record layout, 48 bytes:
+ * <pre>
+ *  0 int    number of rooms
+ *  4 int    tenant ID as a 9 digit number, or -1 if the ID is in the name heap
+ *  8 double area
+ * 16 double price
+ * 24 int    tenant's date of birth, epoch day
+ * 28 int    rental start date, epoch day
+ * 32 int    rental end date, epoch day
+ * 36 int    unused
+ * 40 long   offset of the tenant's entry in the name heap
+ * </pre>
+ * The file is not thread-safe.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class MappedApartmentFile implements Closeable {
+
+    // Constants
+    private static final int MAGIC = 0x41505431;    // "APT1"
+    private static final int SLOT_SIZE = 32;
+    private static final int HEADER_SIZE = 2 * SLOT_SIZE;
+    private static final int RECORD_SIZE = 48;
+    private static final int INITIAL_CAPACITY = 1024; // Records mapped when a new file is created
+    private static final int UNPACKED_ID = -1;
+    private static final int ROOMS = 0;             // Field offsets inside a record
+    private static final int TENANT_ID = 4;
+    private static final int AREA = 8;
+    private static final int PRICE = 16;
+    private static final int TENANT_BIRTH = 24;
+    private static final int RENTAL_START = 28;
+    private static final int RENTAL_END = 32;
+    private static final int NAME_OFFSET = 40;
+
+    // Instance variables
+    private final FileChannel _records;
+    private final FileChannel _names;
+    private MappedByteBuffer _map;
+    private int _capacity;    // records the mapping can hold
+    private int _size;        // records, committed or not
+    private long _nameLength; // bytes in the name heap, committed or not
+    private long _sequence;   // sequence number of the last commit
+
+    // Opens the two files and maps the records
+    private MappedApartmentFile(Path path) throws IOException {
+        _records = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        _names = FileChannel.open(Paths.get(path + ".names"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        _capacity = Math.max(INITIAL_CAPACITY, (int) ((_records.size() - HEADER_SIZE) / RECORD_SIZE));
+        _map = _records.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) _capacity * RECORD_SIZE);
+        readHeader();
+        _names.truncate(_nameLength);
+    }
+
+    /**
+     * Opens the file, creating it if it does not exist. Only the header is read.
+     *
+     * @param path the record file; the name heap is the same path with ".names" added
+     * @return the open file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static MappedApartmentFile open(Path path) throws IOException {
+        return new MappedApartmentFile(path);
+    }
+
+    /**
+     * Gets the number of records, including those appended since the last commit.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Appends the apartment as a new record. It survives a crash only after commit.
+     *
+     * @param apartment the apartment to append
+     * @return the index of the new record
+     * @throws IOException if the name heap cannot be written or the mapping cannot grow
+     */
+    public int append(Apartment apartment) throws IOException {
+        if (_size == _capacity)
+            grow();
+        int index = _size++;
+        int at = offset(index);
+        String id = apartment.getTenantId();
+        int packedId = Person.packId(id);
+        _map.putInt(at + ROOMS, apartment.getNoOfRooms());
+        _map.putInt(at + TENANT_ID, packedId);
+        _map.putDouble(at + AREA, apartment.getArea());
+        _map.putDouble(at + PRICE, apartment.getPrice());
+        _map.putInt(at + TENANT_BIRTH, apartment.getTenantDateOfBirth().getEpochDay());
+        _map.putInt(at + RENTAL_START, apartment.getRentalStartDate().getEpochDay());
+        _map.putInt(at + RENTAL_END, apartment.getRentalEndDate().getEpochDay());
+        _map.putLong(at + NAME_OFFSET, appendName(apartment.getTenantName(), packedId == UNPACKED_ID ? id : null));
+        return index;
+    }
+
+    // record getters
+
+    /**
+     * Gets the number of rooms of a record.
+     *
+     * @param index the record index
+     * @return the number of rooms
+     */
+    public int getNoOfRooms(int index) {
+        return _map.getInt(offset(checkIndex(index)) + ROOMS);
+    }
+
+    /**
+     * Gets the area of a record.
+     *
+     * @param index the record index
+     * @return the area
+     */
+    public double getArea(int index) {
+        return _map.getDouble(offset(checkIndex(index)) + AREA);
+    }
+
+    /**
+     * Gets the price of a record.
+     *
+     * @param index the record index
+     * @return the price
+     */
+    public double getPrice(int index) {
+        return _map.getDouble(offset(checkIndex(index)) + PRICE);
+    }
+
+    /**
+     * Gets the rental start date of a record.
+     *
+     * @param index the record index
+     * @return the rental start date, an immutable Date
+     */
+    public Date getRentalStartDate(int index) {
+        return Date.ofEpochDay(_map.getInt(offset(checkIndex(index)) + RENTAL_START));
+    }
+
+    /**
+     * Gets the rental end date of a record.
+     *
+     * @param index the record index
+     * @return the rental end date, an immutable Date
+     */
+    public Date getRentalEndDate(int index) {
+        return Date.ofEpochDay(_map.getInt(offset(checkIndex(index)) + RENTAL_END));
+    }
+
+    /**
+     * Gets the tenant's ID of a record.
+     *
+     * @param index the record index
+     * @return the tenant's ID
+     * @throws IOException if the name heap cannot be read
+     */
+    public String getTenantId(int index) throws IOException {
+        int packedId = _map.getInt(offset(checkIndex(index)) + TENANT_ID);
+        if (packedId != UNPACKED_ID)
+            return Person.unpackId(packedId);
+        long nameOffset = _map.getLong(offset(index) + NAME_OFFSET);
+        return readString(nameOffset + 4 + readLength(nameOffset));
+    }
+
+    /**
+     * Gets the tenant's name of a record.
+     *
+     * @param index the record index
+     * @return the tenant's name
+     * @throws IOException if the name heap cannot be read
+     */
+    public String getTenantName(int index) throws IOException {
+        return readString(_map.getLong(offset(checkIndex(index)) + NAME_OFFSET));
+    }
+
+    /**
+     * Builds an Apartment holding a record.
+     *
+     * @param index the record index
+     * @return a new apartment
+     * @throws IOException if the name heap cannot be read
+     */
+    public Apartment get(int index) throws IOException {
+        int at = offset(checkIndex(index));
+        Date birth = Date.ofEpochDay(_map.getInt(at + TENANT_BIRTH));
+        Date start = Date.ofEpochDay(_map.getInt(at + RENTAL_START));
+        Date end = Date.ofEpochDay(_map.getInt(at + RENTAL_END));
+        Person tenant = new Person(getTenantName(index), birth.getDay(), birth.getMonth(), birth.getYear(), getTenantId(index));
+        return new Apartment(_map.getInt(at + ROOMS), _map.getDouble(at + AREA), _map.getDouble(at + PRICE), tenant,
+                start.getDay(), start.getMonth(), start.getYear(), end.getDay(), end.getMonth(), end.getYear());
+    }
+
+    // in-place setters
+
+    /**
+     * Sets the number of rooms of a record, with the rule of {@link Apartment#setNoOfRooms(int)}.
+     *
+     * @param index      the record index
+     * @param roomsToSet the new number of rooms
+     */
+    public void setNoOfRooms(int index, int roomsToSet) {
+        if (roomsToSet >= Apartment.MIN_ROOMS)
+            _map.putInt(offset(checkIndex(index)) + ROOMS, roomsToSet);
+    }
+
+    /**
+     * Sets the price of a record, with the rule of {@link Apartment#setPrice(double)}.
+     *
+     * @param index      the record index
+     * @param priceToSet the new price
+     */
+    public void setPrice(int index, double priceToSet) {
+        if (priceToSet >= Apartment.MIN_PRICE)
+            _map.putDouble(offset(checkIndex(index)) + PRICE, priceToSet);
+    }
+
+    /**
+     * Sets the rental end date of a record, with the rule of {@link Apartment#setRentalEndDate(Date)}.
+     *
+     * @param index        the record index
+     * @param endDateToSet the new rental end date
+     */
+    public void setRentalEndDate(int index, Date endDateToSet) {
+        int at = offset(checkIndex(index));
+        if (endDateToSet.getEpochDay() > _map.getInt(at + RENTAL_START))
+            _map.putInt(at + RENTAL_END, endDateToSet.getEpochDay());
+    }
+
+    /**
+     * Makes every append and every in-place change so far durable. The data is forced
+     * to disk before the header that makes it visible.
+     *
+     * @throws IOException if the files cannot be forced
+     */
+    public void commit() throws IOException {
+        _names.force(false);
+        _map.force();
+        _sequence++;
+        writeSlot((int) (_sequence % 2) * SLOT_SIZE);
+        _map.force();
+    }
+
+    /**
+     * Closes the files without committing.
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    public void close() throws IOException {
+        _records.close();
+        _names.close();
+    }
+
+    // Reads the valid header slot with the highest sequence number, if any
+    private void readHeader() {
+        for (int slot = 0; slot < HEADER_SIZE; slot += SLOT_SIZE) {
+            if (_map.getInt(slot) != MAGIC || _map.getInt(slot + 28) != checksum(slot))
+                continue;
+            long sequence = _map.getLong(slot + 8);
+            if (sequence > _sequence) {
+                _sequence = sequence;
+                _size = _map.getInt(slot + 4);
+                _nameLength = _map.getLong(slot + 16);
+            }
+        }
+    }
+
+    // Writes the committed state into the slot at the given offset
+    private void writeSlot(int slot) {
+        _map.putInt(slot, MAGIC);
+        _map.putInt(slot + 4, _size);
+        _map.putLong(slot + 8, _sequence);
+        _map.putLong(slot + 16, _nameLength);
+        _map.putInt(slot + 24, 0);
+        _map.putInt(slot + 28, checksum(slot));
+    }
+
+    // Checksum of the first 28 bytes of a slot
+    private int checksum(int slot) {
+        CRC32 crc = new CRC32();
+        ByteBuffer bytes = _map.duplicate();
+        bytes.position(slot).limit(slot + 28);
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    // Doubles the number of records the mapping can hold
+    private void grow() throws IOException {
+        if (HEADER_SIZE + 2L * _capacity * RECORD_SIZE > Integer.MAX_VALUE)
+            throw new IOException("The record file cannot hold more than " + _capacity + " records");
+        _capacity *= 2;
+        _map = _records.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) _capacity * RECORD_SIZE);
+    }
+
+    // Appends a name heap entry: the name, then the ID if it is given
+    private long appendName(String name, String id) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] idBytes = id == null ? new byte[0] : id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(4 + nameBytes.length + (id == null ? 0 : 4 + idBytes.length));
+        entry.putInt(nameBytes.length).put(nameBytes);
+        if (id != null)
+            entry.putInt(idBytes.length).put(idBytes);
+        entry.flip();
+        long offset = _nameLength;
+        while (entry.hasRemaining())
+            _nameLength += _names.write(entry, _nameLength);
+        return offset;
+    }
+
+    // Reads the length prefixed string at the offset in the name heap
+    private String readString(long offset) throws IOException {
+        byte[] bytes = new byte[readLength(offset)];
+        readFully(ByteBuffer.wrap(bytes), offset + 4);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Reads the length prefix at the offset in the name heap
+    private int readLength(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        return length.getInt(0);
+    }
+
+    // Fills the buffer from the name heap, starting at the offset
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = _names.read(buffer, offset);
+            if (read < 0)
+                throw new IOException("Name heap ends at " + offset);
+            offset += read;
+        }
+    }
+
+    // Byte offset of a record in the mapping
+    private static int offset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    // Checks that the record exists
+    private int checkIndex(int index) {
+        if (index < 0 || index >= _size)
+            throw new IndexOutOfBoundsException("Record " + index + " out of " + _size);
+        return index;
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Metrics class counts what the Date and Apartment classes do quietly: the tenant
+ * changes accepted and the ones rejected, by the rule that rejected them; the invalid
+ * dates replaced by the default date and the invalid values the Date setters ignored;
+ * the values the Apartment constructor replaced by defaults; and the calls to daysLeft.
+ * It also keeps latency histograms of accepted tenant changes and of journal syncs.
+ * <p>
+ * The counters are LongAdders, so threads counting at once do not contend, and counting
+ * is always on. An increment is still an atomic instruction, which would cost daysLeft
+ * several times its own work, so daysLeft calls are sampled: one call in
+ * {@value #SAMPLE_RATE} adds {@value #SAMPLE_RATE} to the counter, and the count is an
+ * estimate. Timing a tenant change costs two clock reads, so only one change in
+ * {@value #SAMPLE_RATE} is timed.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public final class Metrics {
+
+    // Constants
+    private static final int SAMPLE_RATE = 64;        // One timed tenant change, or counted daysLeft call, in this many; a power of two
+    private static final long NOT_TIMED = Long.MIN_VALUE; // Start time of a call that is not sampled
+
+    /** Tenant changes accepted by changeTenant. */
+    public static final Counter TENANT_CHANGED = new Counter("tenant_changed");
+    /** Tenant changes rejected because the new tenant is not younger than the current one. */
+    public static final Counter TENANT_REJECTED_AGE = new Counter("tenant_rejected_age");
+    /** Tenant changes rejected because the new price is lower than the current one. */
+    public static final Counter TENANT_REJECTED_PRICE = new Counter("tenant_rejected_price");
+    /** Tenant changes rejected because the lease has too many days left on the start date. */
+    public static final Counter TENANT_REJECTED_WINDOW = new Counter("tenant_rejected_window");
+    /** Invalid dates given to the Date constructor or valueOf and replaced by the default date. */
+    public static final Counter DATE_DEFAULTED = new Counter("date_defaulted");
+    /** Calls to the Date setters ignored because the result would be invalid. */
+    public static final Counter DATE_SET_IGNORED = new Counter("date_set_ignored");
+    /** Numbers of rooms below the minimum replaced by the default in the Apartment constructor. */
+    public static final Counter ROOMS_DEFAULTED = new Counter("apartment_rooms_defaulted");
+    /** Areas below the minimum replaced by the default in the Apartment constructor. */
+    public static final Counter AREA_DEFAULTED = new Counter("apartment_area_defaulted");
+    /** Prices below the minimum replaced by the default in the Apartment constructor. */
+    public static final Counter PRICE_DEFAULTED = new Counter("apartment_price_defaulted");
+    /** Rental end dates not after the start date replaced by a one year lease in the Apartment constructor. */
+    public static final Counter END_DATE_DEFAULTED = new Counter("apartment_end_date_defaulted");
+    /** Calls to Apartment.daysLeft, including the ones made by changeTenant; an estimate, as the calls are sampled. */
+    public static final Counter DAYS_LEFT_CALLS = new Counter("days_left_calls");
+
+    /** Latency of the accepted tenant changes that were sampled, observers and listeners included. */
+    public static final LatencyHistogram CHANGE_TENANT_LATENCY = new LatencyHistogram("change_tenant");
+    /** Latency of writing and forcing a batch of journal records. */
+    public static final LatencyHistogram JOURNAL_SYNC_LATENCY = new LatencyHistogram("journal_sync");
+
+    // Every counter and histogram, in export order
+    private static final Counter[] COUNTERS = {TENANT_CHANGED, TENANT_REJECTED_AGE, TENANT_REJECTED_PRICE,
+            TENANT_REJECTED_WINDOW, DATE_DEFAULTED, DATE_SET_IGNORED, ROOMS_DEFAULTED, AREA_DEFAULTED,
+            PRICE_DEFAULTED, END_DATE_DEFAULTED, DAYS_LEFT_CALLS};
+    private static final LatencyHistogram[] HISTOGRAMS = {CHANGE_TENANT_LATENCY, JOURNAL_SYNC_LATENCY};
+
+    // Not to be instantiated
+    private Metrics() {
+    }
+
+    /**
+     * Takes a copy of every counter and histogram. Events counted while the copy is taken
+     * may or may not be in it.
+     *
+     * @return a snapshot of the metrics
+     */
+    public static Snapshot snapshot() {
+        long[] counts = new long[COUNTERS.length];
+        for (int i = 0; i < COUNTERS.length; i++)
+            counts[i] = COUNTERS[i].get();
+        LatencyHistogram.Snapshot[] histograms = new LatencyHistogram.Snapshot[HISTOGRAMS.length];
+        for (int i = 0; i < HISTOGRAMS.length; i++)
+            histograms[i] = HISTOGRAMS[i].snapshot();
+        return new Snapshot(counts, histograms);
+    }
+
+    /**
+     * Sets every counter to zero and empties every histogram.
+     */
+    public static void reset() {
+        for (Counter counter : COUNTERS)
+            counter.reset();
+        for (LatencyHistogram histogram : HISTOGRAMS)
+            histogram.reset();
+    }
+
+    /**
+     * Starts timing a call, if the call is one of the sampled ones.
+     *
+     * @return the start time, to be passed to {@link #stopTimer(LatencyHistogram, long)}
+     */
+    static long startTimer() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Records the time since the start of a sampled call, does nothing for a call that was not sampled.
+     *
+     * @param histogram the histogram to record in
+     * @param start     the start time returned by {@link #startTimer()}
+     */
+    static void stopTimer(LatencyHistogram histogram, long start) {
+        if (start != NOT_TIMED)
+            histogram.record(System.nanoTime() - start);
+    }
+
+    /**
+     * A named count of events, cheap to increment from many threads.
+     */
+    public static final class Counter {
+
+        // Instance variables
+        private final String _name;
+        private final LongAdder _count = new LongAdder();
+
+        private Counter(String name) {
+            _name = name;
+        }
+
+        /**
+         * Gets the name the counter is exported under.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Gets the number of events counted so far. Events counted while the counter is read may or may not be included.
+         *
+         * @return the count
+         */
+        public long get() {
+            return _count.sum();
+        }
+
+        // Counts one event
+        void increment() {
+            _count.increment();
+        }
+
+        // Counts one event in SAMPLE_RATE, as SAMPLE_RATE events, for events too frequent to count one by one
+        void incrementSampled() {
+            if ((ThreadLocalRandom.current().nextInt() & (SAMPLE_RATE - 1)) == 0)
+                _count.add(SAMPLE_RATE);
+        }
+
+        // Starts counting from zero
+        private void reset() {
+            _count.reset();
+        }
+    }
+
+    /**
+     * An immutable copy of every counter and histogram at one moment.
+     */
+    public static final class Snapshot {
+
+        // Instance variables
+        private final long[] _counts;   // in the order of COUNTERS
+        private final LatencyHistogram.Snapshot[] _histograms;
+
+        private Snapshot(long[] counts, LatencyHistogram.Snapshot[] histograms) {
+            _counts = counts;
+            _histograms = histograms;
+        }
+
+        /**
+         * Gets the value a counter had when the snapshot was taken.
+         *
+         * @param counter the counter
+         * @return the count
+         */
+        public long get(Counter counter) {
+            for (int i = 0; i < COUNTERS.length; i++)
+                if (COUNTERS[i] == counter)
+                    return _counts[i];
+            throw new IllegalArgumentException("Unknown counter " + counter.getName());
+        }
+
+        /**
+         * Gets the copy of a histogram taken with the snapshot.
+         *
+         * @param histogram the histogram
+         * @return the copy
+         */
+        public LatencyHistogram.Snapshot get(LatencyHistogram histogram) {
+            for (int i = 0; i < HISTOGRAMS.length; i++)
+                if (HISTOGRAMS[i] == histogram)
+                    return _histograms[i];
+            throw new IllegalArgumentException("Unknown histogram " + histogram.getName());
+        }
+
+        /**
+         * Appends the snapshot as lines of name and value, one per counter, then the lines of each histogram.
+         *
+         * @param builder the builder to append to
+         * @return the builder
+         */
+        public StringBuilder appendTo(StringBuilder builder) {
+            for (int i = 0; i < COUNTERS.length; i++)
+                builder.append(COUNTERS[i].getName()).append(' ').append(_counts[i]).append('\n');
+            for (LatencyHistogram.Snapshot histogram : _histograms)
+                histogram.appendTo(builder);
+            return builder;
+        }
+
+        /**
+         * Returns the snapshot as lines of name and value.
+         *
+         * @return the string representation
+         */
+        public String toString() {
+            return appendTo(new StringBuilder()).toString();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The OccupancyIndex class answers which apartments are rented on a day, which leases
+ * overlap a range of days, and how many apartments are occupied or vacant on each day
+ * of a range, without scanning every apartment.
+ * Each lease is the interval from its rental start date to its rental end date, both days
+ * included. The leases are kept in an interval tree: a treap ordered by start day in which
+ * every node also holds the latest end day of its subtree, so a query skips any subtree
+ * whose leases all end before the days asked about.
+ * The index observes its apartments and moves a lease when its rental period changes.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class OccupancyIndex implements ApartmentObserver {
+
+    // Instance variables
+    private Node _root;
+    private long _nextSequence; // breaks ties between leases starting on the same day
+    private final Map<Apartment, Node> _nodes = new IdentityHashMap<>();
+    private final Random _random = new Random();
+
+    /**
+     * Starts tracking the lease of the given apartment.
+     *
+     * @param apartment the apartment to add
+     * @return true if the apartment was added, false if it was already in the index
+     */
+    public boolean add(Apartment apartment) {
+        synchronized (this) {
+            if (_nodes.containsKey(apartment))
+                return false;
+            Node node = new Node(apartment, _nextSequence++, _random.nextInt());
+            _nodes.put(apartment, node);
+            _root = insert(_root, node);
+        }
+        apartment.addObserver(this); // outside the lock, a thread changing the apartment may hold a lock on it
+        afterChange(apartment);      // picks up a change made before the index was observing
+        return true;
+    }
+
+    /**
+     * Stops tracking the lease of the given apartment.
+     *
+     * @param apartment the apartment to remove
+     * @return true if the apartment was removed, false if it was not in the index
+     */
+    public boolean remove(Apartment apartment) {
+        synchronized (this) {
+            Node node = _nodes.remove(apartment);
+            if (node == null)
+                return false;
+            _root = delete(_root, node);
+        }
+        apartment.removeObserver(this);
+        return true;
+    }
+
+    /**
+     * Gets the number of apartments in the index.
+     *
+     * @return the number of apartments
+     */
+    public synchronized int size() {
+        return _nodes.size();
+    }
+
+    /**
+     * Finds the apartments rented on the given day.
+     *
+     * @param day the day to check
+     * @return a new list of the apartments whose lease includes the day, ordered by rental start date
+     */
+    public synchronized List<Apartment> findOccupiedOn(Date day) {
+        List<Apartment> result = new ArrayList<>();
+        collect(_root, day.getEpochDay(), day.getEpochDay(), result);
+        return result;
+    }
+
+    /**
+     * Finds the apartments whose lease shares at least one day with the given range, both ends included.
+     *
+     * @param from the first day of the range
+     * @param to   the last day of the range
+     * @return a new list of the matching apartments, ordered by rental start date
+     */
+    public synchronized List<Apartment> findOverlapping(Date from, Date to) {
+        List<Apartment> result = new ArrayList<>();
+        if (!from.after(to))
+            collect(_root, from.getEpochDay(), to.getEpochDay(), result);
+        return result;
+    }
+
+    /**
+     * Counts the apartments rented on the given day.
+     *
+     * @param day the day to check
+     * @return the number of apartments whose lease includes the day
+     */
+    public synchronized int countOccupiedOn(Date day) {
+        return count(_root, day.getEpochDay());
+    }
+
+    /**
+     * Counts the apartments rented on each day of the given range, both ends included.
+     * The leases overlapping the range are found in the tree, then a sweep line over
+     * their start and end days gives every day's count in one pass.
+     *
+     * @param from the first day of the range
+     * @param to   the last day of the range
+     * @return an array whose element i is the number of apartments rented on the i-th day from the first, empty if from is after to
+     */
+    public synchronized int[] occupancy(Date from, Date to) {
+        if (from.after(to))
+            return new int[0];
+        int first = from.getEpochDay();
+        int last = to.getEpochDay();
+        int[] counts = new int[last - first + 2];
+        sweep(_root, first, last, counts);
+        for (int i = 1; i < counts.length; i++)
+            counts[i] += counts[i - 1];
+        return Arrays.copyOf(counts, counts.length - 1);
+    }
+
+    /**
+     * Counts the apartments not rented on each day of the given range, both ends included.
+     *
+     * @param from the first day of the range
+     * @param to   the last day of the range
+     * @return an array whose element i is the number of vacant apartments on the i-th day from the first, empty if from is after to
+     */
+    public synchronized int[] vacancy(Date from, Date to) {
+        int[] counts = occupancy(from, to);
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = _nodes.size() - counts[i];
+        return counts;
+    }
+
+    /**
+     * Does nothing, the lease is moved once the change is done.
+     *
+     * @param apartment the apartment about to change
+     */
+    public void beforeChange(Apartment apartment) {
+    }
+
+    /**
+     * Moves the lease in the tree if its rental period changed.
+     *
+     * @param apartment the apartment that changed
+     */
+    public synchronized void afterChange(Apartment apartment) {
+        Node node = _nodes.get(apartment);
+        if (node == null)
+            return;
+        int start = apartment.getRentalStartDate().getEpochDay();
+        int end = apartment.getRentalEndDate().getEpochDay();
+        if (node._start == start && node._end == end)
+            return;
+        _root = delete(_root, node);
+        node._start = start;
+        node._end = end;
+        node._left = null;
+        node._right = null;
+        node._maxEnd = end;
+        _root = insert(_root, node);
+    }
+
+    // Inserts the node into the subtree, returns the new root of the subtree
+    private static Node insert(Node root, Node node) {
+        if (root == null)
+            return node;
+        if (node.compareTo(root) < 0) {
+            root._left = insert(root._left, node);
+            if (root._left._priority > root._priority)
+                root = rotateRight(root);
+        } else {
+            root._right = insert(root._right, node);
+            if (root._right._priority > root._priority)
+                root = rotateLeft(root);
+        }
+        update(root);
+        return root;
+    }
+
+    // Deletes the node from the subtree, returns the new root of the subtree
+    private static Node delete(Node root, Node node) {
+        if (root == null)
+            return null;
+        if (root == node)
+            return merge(root._left, root._right);
+        if (node.compareTo(root) < 0)
+            root._left = delete(root._left, node);
+        else
+            root._right = delete(root._right, node);
+        update(root);
+        return root;
+    }
+
+    // Joins two subtrees where every node of the left one comes before every node of the right one
+    private static Node merge(Node left, Node right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        if (left._priority > right._priority) {
+            left._right = merge(left._right, right);
+            update(left);
+            return left;
+        }
+        right._left = merge(left, right._left);
+        update(right);
+        return right;
+    }
+
+    // Lifts the left child above the node
+    private static Node rotateRight(Node node) {
+        Node left = node._left;
+        node._left = left._right;
+        left._right = node;
+        update(node);
+        return left;
+    }
+
+    // Lifts the right child above the node
+    private static Node rotateLeft(Node node) {
+        Node right = node._right;
+        node._right = right._left;
+        right._left = node;
+        update(node);
+        return right;
+    }
+
+    // Recomputes the latest end day of the subtree from the node and its children
+    private static void update(Node node) {
+        int maxEnd = node._end;
+        if (node._left != null)
+            maxEnd = Math.max(maxEnd, node._left._maxEnd);
+        if (node._right != null)
+            maxEnd = Math.max(maxEnd, node._right._maxEnd);
+        node._maxEnd = maxEnd;
+    }
+
+    // Adds the apartments of the subtree whose lease overlaps the days from first to last, in start order
+    private static void collect(Node node, int first, int last, List<Apartment> result) {
+        if (node == null || node._maxEnd < first)
+            return;
+        collect(node._left, first, last, result);
+        if (node._start > last)
+            return;
+        if (node._end >= first)
+            result.add(node._apartment);
+        collect(node._right, first, last, result);
+    }
+
+    // Counts the leases of the subtree that include the day
+    private static int count(Node node, int day) {
+        if (node == null || node._maxEnd < day)
+            return 0;
+        int count = count(node._left, day);
+        if (node._start > day)
+            return count;
+        if (node._end >= day)
+            count++;
+        return count + count(node._right, day);
+    }
+
+    // Marks where each lease of the subtree overlapping the days from first to last starts and stops counting
+    private static void sweep(Node node, int first, int last, int[] changes) {
+        if (node == null || node._maxEnd < first)
+            return;
+        sweep(node._left, first, last, changes);
+        if (node._start > last)
+            return;
+        if (node._end >= first) {
+            changes[Math.max(node._start, first) - first]++;
+            changes[Math.min(node._end, last) - first + 1]--;
+        }
+        sweep(node._right, first, last, changes);
+    }
+
+    // A lease in the tree
+    private static class Node implements Comparable<Node> {
+        private final Apartment _apartment;
+        private final long _sequence;
+        private final int _priority;
+        private int _start;  // epoch day of the rental start date
+        private int _end;    // epoch day of the rental end date
+        private int _maxEnd; // latest end day in the subtree
+        private Node _left;
+        private Node _right;
+
+        private Node(Apartment apartment, long sequence, int priority) {
+            _apartment = apartment;
+            _sequence = sequence;
+            _priority = priority;
+            _start = apartment.getRentalStartDate().getEpochDay();
+            _end = apartment.getRentalEndDate().getEpochDay();
+            _maxEnd = _end;
+        }
+
+        // Orders by start day, then by the order the leases were added
+        public int compareTo(Node other) {
+            if (_start != other._start)
+                return Integer.compare(_start, other._start);
+            return Long.compare(_sequence, other._sequence);
+        }
+    }
+}
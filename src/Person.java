@@ -3,6 +3,7 @@
  * This class represents a person with a name, ID, and date of birth.
  * It provides methods to create, access, and modify person information,
  * as well as compare Person objects based on their date of birth.
+ * The date of birth is kept as a shared immutable Date, so it is never copied.
  *
  * @author Daniel Shimon
  * @version (Maman 12 )
@@ -37,13 +38,26 @@ public class Person {
             _name = DEFAULT_NAME;
         else
             _name = name;
-        _dateOfBirth = new Date(day, month, year);
+        _dateOfBirth = Date.valueOf(day, month, year);
         if (id.length() == VALID_ID_LENGTH)
             _id = id;
         else
             _id = DEFAULT_ID;
     }
 
+    /**
+     * Creates a Person from values already checked, keeping the given Date.
+     *
+     * @param name        the name of the person, not empty
+     * @param dateOfBirth the date of birth, a shared immutable Date
+     * @param id          the person's ID, 9 characters long
+     */
+    Person(String name, Date dateOfBirth, String id) {
+        _name = name;
+        _dateOfBirth = dateOfBirth;
+        _id = id;
+    }
+
     // Copy constructor
 
     /**
@@ -53,7 +67,7 @@ public class Person {
      */
     public Person(Person other) {
         _name = other._name;
-        _dateOfBirth = new Date(other._dateOfBirth);
+        _dateOfBirth = other._dateOfBirth;
         _id = other._id;
     }
 
@@ -79,12 +93,14 @@ public class Person {
 
 
     /**
-     * Returns the person's date of birth.
+     * Returns the person's date of birth. The Date is shared, not a copy as it used to be,
+     * so its set methods throw UnsupportedOperationException; to change it, copy it with
+     * new Date(date) and pass the copy to setDateOfBirth.
      *
-     * @return the person's date of birth
+     * @return the person's date of birth, an immutable Date
      */
     public Date getDateOfBirth() {
-        return  new Date(_dateOfBirth);
+        return _dateOfBirth;
     }
 
     //set methods
@@ -111,14 +127,50 @@ public class Person {
 
 
     /**
-     * Sets the date of birth for this Person object.
+     * Sets the date of birth for this Person object. The date is stored as the shared
+     * immutable Date equal to it, so later changes to the given Date do not reach the person.
      *
      * @param setDateOfBirth the new date of birth to set
+     * @throws NullPointerException if the date is null, which used to be stored as is
      */
     public void setDateOfBirth(Date setDateOfBirth) {
-        _dateOfBirth = setDateOfBirth;
+        _dateOfBirth = Date.valueOf(setDateOfBirth);
+        }
+
+
+    /**
+     * Packs a 9 digit ID into an int.
+     *
+     * @param id the ID to pack
+     * @return the ID as a number, or -1 if it is not made of exactly 9 digits
+     */
+    static int packId(String id) {
+        if (id.length() != VALID_ID_LENGTH)
+            return -1;
+        int packed = 0;
+        for (int i = 0; i < VALID_ID_LENGTH; i++) {
+            char digit = id.charAt(i);
+            if (digit < '0' || digit > '9')
+                return -1;
+            packed = packed * 10 + (digit - '0');
         }
+        return packed;
+    }
 
+    /**
+     * Unpacks an ID packed by {@link #packId(String)}, restoring its leading zeros.
+     *
+     * @param packed the packed ID
+     * @return the 9 digit ID
+     */
+    static String unpackId(int packed) {
+        char[] digits = new char[VALID_ID_LENGTH];
+        for (int i = VALID_ID_LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + packed % 10);
+            packed /= 10;
+        }
+        return new String(digits);
+    }
 
     public boolean equals(Person other) {
         return (_name.equals(other._name) &&
@@ -134,9 +186,9 @@ public class Person {
      *         equal to, or older than the other person, respectively
      */
     public int compareTo(Person other) {
-        if (getDateOfBirth().before(other._dateOfBirth)) {
+        if (_dateOfBirth.before(other._dateOfBirth)) {
             return 1; // This person is older
-        } else if (getDateOfBirth().after(other._dateOfBirth)) {
+        } else if (_dateOfBirth.after(other._dateOfBirth)) {
             return -1; // This person is younger
         } else {
             return 0; // Same date of birth
@@ -151,7 +203,18 @@ public class Person {
          * @return a string representation of the Person object
          */
         public String toString () {
-            return "Name: " + this.getName() + "\nID: " + this.getId() + "\nDate of birth: " + this.getDateOfBirth();
+            return appendTo(new StringBuilder()).toString();
+        }
+
+        /**
+         * Appends the string representation of the Person object to the builder, without creating strings.
+         *
+         * @param builder the builder to append to
+         * @return the builder
+         */
+        public StringBuilder appendTo (StringBuilder builder) {
+            builder.append("Name: ").append(_name).append("\nID: ").append(_id).append("\nDate of birth: ");
+            return _dateOfBirth.appendTo(builder);
         }
 
 
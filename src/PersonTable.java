@@ -0,0 +1,448 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The PersonTable class keeps people outside the Java heap, as fixed width records in a
+ * direct buffer, so millions of tenants cost no objects and no garbage collection work.
+ * Names are kept once each, in UTF-8, in a second direct buffer, the name arena: adding
+ * a person whose name is already in the table only stores the offset of that name.
+ * <p>
+ * Record layout, 16 bytes:
+ * <pre>
+ *  0 int    ID as a 9 digit number, or -(offset + 1) of the ID in the arena if it is not 9 digits
+ *  4 int    date of birth, epoch day
+ *  8 int    offset of the name in the arena
+ * 12 int    length of the name in bytes
+ * </pre>
+ * An ID that is not 9 digits is kept in the arena as one length byte followed by its UTF-8 bytes.
+ * <p>
+ * A row is addressed by the index add returned. An {@link Entry} reads a row in place,
+ * and compares rows by their packed fields without building any String.
+ * The table is not thread-safe.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class PersonTable {
+
+    // Constants
+    private static final int RECORD_SIZE = 16;
+    private static final int ID = 0;
+    private static final int BIRTH = 4;
+    private static final int NAME_OFFSET = 8;
+    private static final int NAME_LENGTH = 12;
+    private static final int INITIAL_CAPACITY = 1024;       // Records
+    private static final int INITIAL_ARENA_SIZE = 1 << 16;  // Bytes
+    private static final int INITIAL_NAME_SLOTS = 1024;     // Slots of the name table, a power of two
+    private static final long EMPTY_SLOT = -1;
+
+    // Instance variables
+    private ByteBuffer _records = ByteBuffer.allocateDirect(INITIAL_CAPACITY * RECORD_SIZE);
+    private ByteBuffer _arena = ByteBuffer.allocateDirect(INITIAL_ARENA_SIZE);
+    private int _size;
+    private int _arenaSize;
+    private long[] _nameSlots = newSlots(INITIAL_NAME_SLOTS); // open addressing, offset in the high half, length in the low
+    private int _names;
+
+    /**
+     * Adds a person as a new row. The person itself is not kept.
+     *
+     * @param person the person to add
+     * @return the index of the new row
+     */
+    public int add(Person person) {
+        if ((_size + 1) * RECORD_SIZE > _records.capacity())
+            _records = grow(_records, _records.capacity() * 2);
+        int id = Person.packId(person.getId());
+        if (id < 0)
+            id = -(appendId(person.getId()) + 1);
+        byte[] name = person.getName().getBytes(StandardCharsets.UTF_8);
+        int at = _size * RECORD_SIZE;
+        _records.putInt(at + ID, id);
+        _records.putInt(at + BIRTH, person.getDateOfBirth().getEpochDay());
+        _records.putInt(at + NAME_OFFSET, intern(name));
+        _records.putInt(at + NAME_LENGTH, name.length);
+        return _size++;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Gets the number of distinct names in the arena.
+     *
+     * @return the number of distinct names
+     */
+    public int getNameCount() {
+        return _names;
+    }
+
+    /**
+     * Gets the number of bytes the rows, the names and the name table take up, without
+     * the room kept free for growth.
+     *
+     * @return the number of bytes in use
+     */
+    public long getFootprint() {
+        return (long) _size * RECORD_SIZE + _arenaSize + (long) _nameSlots.length * Long.BYTES;
+    }
+
+    /**
+     * Gets a view of a row.
+     *
+     * @param row the index of the row
+     * @return a new view of the row
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public Entry get(int row) {
+        return new Entry(this).moveTo(row);
+    }
+
+    /**
+     * Builds a Person from a row.
+     *
+     * @param row the index of the row
+     * @return a new Person holding the row's values
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public Person toPerson(int row) {
+        return new Person(getName(row), Date.ofEpochDay(getEpochDayOfBirth(row)), getId(row));
+    }
+
+    /**
+     * Gets the date of birth of a row as a day number.
+     *
+     * @param row the index of the row
+     * @return the day number of the date of birth
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public int getEpochDayOfBirth(int row) {
+        checkRow(row);
+        return _records.getInt(row * RECORD_SIZE + BIRTH);
+    }
+
+    /**
+     * Gets the name of a row.
+     *
+     * @param row the index of the row
+     * @return the name
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public String getName(int row) {
+        checkRow(row);
+        int at = row * RECORD_SIZE;
+        return getString(_records.getInt(at + NAME_OFFSET), _records.getInt(at + NAME_LENGTH));
+    }
+
+    /**
+     * Gets the ID of a row.
+     *
+     * @param row the index of the row
+     * @return the ID
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public String getId(int row) {
+        checkRow(row);
+        int id = _records.getInt(row * RECORD_SIZE + ID);
+        if (id >= 0)
+            return Person.unpackId(id);
+        int offset = -id - 1;
+        return getString(offset + 1, _arena.get(offset));
+    }
+
+    /**
+     * Compares two rows by date of birth, as {@link Person#compareTo(Person)} does.
+     *
+     * @param row   the index of the first row
+     * @param other the index of the second row
+     * @return a negative number if the first is younger, zero if both were born on the same day, a positive number if the first is older
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public int compare(int row, int other) {
+        return Integer.compare(getEpochDayOfBirth(other), getEpochDayOfBirth(row));
+    }
+
+    /**
+     * Checks if two rows hold the same name, ID and date of birth, as {@link Person#equals(Person)} does.
+     * Names are kept once each, so equal names are found by their offsets alone.
+     *
+     * @param row   the index of the first row
+     * @param other the index of the second row
+     * @return true if the rows are equal
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public boolean equals(int row, int other) {
+        checkRow(row);
+        checkRow(other);
+        int at = row * RECORD_SIZE;
+        int otherAt = other * RECORD_SIZE;
+        if (_records.getInt(at + BIRTH) != _records.getInt(otherAt + BIRTH)
+                || _records.getInt(at + NAME_OFFSET) != _records.getInt(otherAt + NAME_OFFSET))
+            return false;
+        int id = _records.getInt(at + ID);
+        int otherId = _records.getInt(otherAt + ID);
+        if (id >= 0 || otherId >= 0 || id == otherId)
+            return id == otherId;
+        return idsEqual(-id - 1, this, -otherId - 1);
+    }
+
+    // Checks if a row of this table and a row of another hold the same values
+    private boolean equals(int row, PersonTable table, int other) {
+        if (table == this)
+            return equals(row, other);
+        int at = row * RECORD_SIZE;
+        int otherAt = other * RECORD_SIZE;
+        ByteBuffer records = table._records;
+        if (_records.getInt(at + BIRTH) != records.getInt(otherAt + BIRTH)
+                || _records.getInt(at + NAME_LENGTH) != records.getInt(otherAt + NAME_LENGTH))
+            return false;
+        int id = _records.getInt(at + ID);
+        int otherId = records.getInt(otherAt + ID);
+        if ((id >= 0 || otherId >= 0) && id != otherId)
+            return false;
+        if (id < 0 && !idsEqual(-id - 1, table, -otherId - 1))
+            return false;
+        return bytesEqual(_arena, _records.getInt(at + NAME_OFFSET), table._arena, records.getInt(otherAt + NAME_OFFSET),
+                _records.getInt(at + NAME_LENGTH));
+    }
+
+    // Checks if an ID kept as text in this table's arena equals one kept in another's, the length bytes first
+    private boolean idsEqual(int offset, PersonTable table, int otherOffset) {
+        int length = _arena.get(offset);
+        return length == table._arena.get(otherOffset) && bytesEqual(_arena, offset + 1, table._arena, otherOffset + 1, length);
+    }
+
+    // Finds the name in the arena, or appends it, and returns its offset
+    private int intern(byte[] name) {
+        if ((_names + 1) * 2 > _nameSlots.length)
+            rehash(_nameSlots.length * 2);
+        int mask = _nameSlots.length - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            long entry = _nameSlots[slot];
+            if (entry == EMPTY_SLOT) {
+                int offset = append(name, 0, name.length);
+                _nameSlots[slot] = (long) offset << 32 | name.length;
+                _names++;
+                return offset;
+            }
+            int offset = (int) (entry >>> 32);
+            if ((int) entry == name.length && arenaEquals(offset, name))
+                return offset;
+        }
+    }
+
+    // Moves the names into a name table of the given number of slots
+    private void rehash(int slots) {
+        long[] old = _nameSlots;
+        _nameSlots = newSlots(slots);
+        int mask = slots - 1;
+        for (long entry : old) {
+            if (entry == EMPTY_SLOT)
+                continue;
+            int slot = hash(_arena, (int) (entry >>> 32), (int) entry) & mask;
+            while (_nameSlots[slot] != EMPTY_SLOT)
+                slot = (slot + 1) & mask;
+            _nameSlots[slot] = entry;
+        }
+    }
+
+    // Appends an ID that is not 9 digits to the arena, after its length, and returns its offset
+    private int appendId(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        int offset = append(new byte[]{(byte) bytes.length}, 0, 1);
+        append(bytes, 0, bytes.length);
+        return offset;
+    }
+
+    // Appends bytes to the arena and returns the offset they start at
+    private int append(byte[] bytes, int start, int length) {
+        if ((long) _arenaSize + length > _arena.capacity())
+            _arena = grow(_arena, (int) Math.min(Math.max(_arena.capacity() * 2L, (long) _arenaSize + length), Integer.MAX_VALUE));
+        int offset = _arenaSize;
+        _arena.put(offset, bytes, start, length);
+        _arenaSize += length;
+        return offset;
+    }
+
+    // Checks if the bytes at the offset of the arena are the given bytes
+    private boolean arenaEquals(int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++)
+            if (_arena.get(offset + i) != bytes[i])
+                return false;
+        return true;
+    }
+
+    // Decodes UTF-8 bytes of the arena
+    private String getString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        _arena.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Throws if there is no such row
+    private void checkRow(int row) {
+        if (row < 0 || row >= _size)
+            throw new IndexOutOfBoundsException("Row " + row + " of " + _size);
+    }
+
+    // Copies a direct buffer into a larger one
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(capacity);
+        larger.put(0, buffer, 0, buffer.capacity());
+        return larger;
+    }
+
+    // A name table with every slot empty
+    private static long[] newSlots(int slots) {
+        long[] table = new long[slots];
+        Arrays.fill(table, EMPTY_SLOT);
+        return table;
+    }
+
+    // Checks if two ranges of bytes, possibly in different buffers, are equal
+    private static boolean bytesEqual(ByteBuffer a, int offset, ByteBuffer b, int otherOffset, int length) {
+        return a.slice(offset, length).equals(b.slice(otherOffset, length));
+    }
+
+    // Hashes bytes the same way wherever they are
+    private static int hash(byte[] bytes) {
+        int hash = 0;
+        for (byte b : bytes)
+            hash = hash * 31 + b;
+        return mix(hash);
+    }
+
+    // Hashes bytes of a buffer the same way as hash(byte[])
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++)
+            hash = hash * 31 + buffer.get(i);
+        return mix(hash);
+    }
+
+    // Spreads the bits of a hash, so nearby names do not land in nearby slots
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A view of one row of a PersonTable, which reads the row in place. A view can be moved
+     * to another row, so one view can walk the whole table without creating objects.
+     * Comparing views compares the packed fields, without building any String.
+     */
+    public static final class Entry {
+
+        // Instance variables
+        private final PersonTable _table;
+        private int _row;
+
+        private Entry(PersonTable table) {
+            _table = table;
+        }
+
+        /**
+         * Moves the view to another row of its table.
+         *
+         * @param row the index of the row
+         * @return this view
+         * @throws IndexOutOfBoundsException if there is no such row
+         */
+        public Entry moveTo(int row) {
+            _table.checkRow(row);
+            _row = row;
+            return this;
+        }
+
+        /**
+         * Gets the index of the row the view reads.
+         *
+         * @return the index of the row
+         */
+        public int getRow() {
+            return _row;
+        }
+
+        /**
+         * Gets the name of the person.
+         *
+         * @return the name, decoded from the arena
+         */
+        public String getName() {
+            return _table.getName(_row);
+        }
+
+        /**
+         * Gets the ID of the person.
+         *
+         * @return the ID
+         */
+        public String getId() {
+            return _table.getId(_row);
+        }
+
+        /**
+         * Gets the date of birth of the person.
+         *
+         * @return the shared immutable date of birth
+         */
+        public Date getDateOfBirth() {
+            return Date.ofEpochDay(_table.getEpochDayOfBirth(_row));
+        }
+
+        /**
+         * Gets the date of birth of the person as a day number.
+         *
+         * @return the day number of the date of birth
+         */
+        public int getEpochDayOfBirth() {
+            return _table.getEpochDayOfBirth(_row);
+        }
+
+        /**
+         * Checks if the other view reads a person with the same name, ID and date of birth.
+         *
+         * @param other the other view, of this table or another one
+         * @return true if the people are equal
+         */
+        public boolean equals(Entry other) {
+            return _table.equals(_row, other._table, other._row);
+        }
+
+        /**
+         * Compares the person with another by date of birth, as {@link Person#compareTo(Person)} does.
+         *
+         * @param other the other view, of this table or another one
+         * @return a negative number if this person is younger, zero if both were born on the same day, a positive number if this person is older
+         */
+        public int compareTo(Entry other) {
+            return Integer.compare(other.getEpochDayOfBirth(), getEpochDayOfBirth());
+        }
+
+        /**
+         * Builds a Person holding the values of the row.
+         *
+         * @return a new Person
+         */
+        public Person toPerson() {
+            return _table.toPerson(_row);
+        }
+
+        /**
+         * Returns the person in the format of {@link Person#toString()}.
+         *
+         * @return the string representation
+         */
+        public String toString() {
+            return toPerson().toString();
+        }
+    }
+}
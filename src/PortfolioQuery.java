@@ -0,0 +1,566 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * The PortfolioQuery class answers report questions over a collection of apartments:
+ * how many match a filter, which k have the highest or lowest value of some projection,
+ * and count, sum, minimum, maximum and mean of a projection, overall or per group.
+ * For example, the average price per square meter of each number of rooms, among the
+ * leases that end within 90 days:
+ * <pre>
+ * new PortfolioQuery(apartments)
+ *         .where(PortfolioQuery.endingWithin(today, 90))
+ *         .groupBy(PortfolioQuery.noOfRooms(), PortfolioQuery.pricePerArea());
+ * </pre>
+ * Filters are Predicates, so they combine with and, or and negate, and projections are
+ * ToDoubleFunctions and ToIntFunctions. The projections offered here read the apartment
+ * through the getters that return shared values, so they create no objects. top and
+ * bottom take either kind; a lambda passed to them declares its parameter's type, as in
+ * {@code (Apartment a) -> a.getPrice()}, so the compiler can tell which is meant.
+ * <p>
+ * A query is immutable: where returns a new query. Running it splits the apartments with
+ * a Spliterator into parts that are scanned in parallel on a fork/join pool, and merges
+ * the partial results. The apartments must not change while a query runs.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class PortfolioQuery {
+
+    // Constants
+    private static final int LEAF_SIZE = 4096;  // Apartments scanned by one task before it stops splitting
+
+    // Instance variables
+    private final Apartment[] _apartments;
+    private final Predicate<Apartment> _filter;
+    private final ForkJoinPool _pool;
+
+    /**
+     * Creates a query over the given apartments, run on the common fork/join pool.
+     * The apartments are held by reference, not copied.
+     *
+     * @param apartments the apartments to query
+     */
+    public PortfolioQuery(Collection<Apartment> apartments) {
+        this(apartments.toArray(new Apartment[0]), null, ForkJoinPool.commonPool());
+    }
+
+    // Creates a query with all its parts
+    private PortfolioQuery(Apartment[] apartments, Predicate<Apartment> filter, ForkJoinPool pool) {
+        _apartments = apartments;
+        _filter = filter;
+        _pool = pool;
+    }
+
+    /**
+     * Returns a query that keeps only the apartments this query keeps and the predicate accepts.
+     *
+     * @param predicate the filter to add
+     * @return a new query
+     */
+    public PortfolioQuery where(Predicate<Apartment> predicate) {
+        return new PortfolioQuery(_apartments, _filter == null ? predicate : _filter.and(predicate), _pool);
+    }
+
+    /**
+     * Returns the same query, run on the given pool.
+     *
+     * @param pool the pool to run on
+     * @return a new query
+     */
+    public PortfolioQuery on(ForkJoinPool pool) {
+        return new PortfolioQuery(_apartments, _filter, pool);
+    }
+
+    /**
+     * Counts the apartments the query keeps.
+     *
+     * @return the number of apartments
+     */
+    public int count() {
+        return (int) aggregate(apartment -> 0).getCount();
+    }
+
+    /**
+     * Finds the apartments the query keeps.
+     *
+     * @return a new list of the apartments, in the order of the collection
+     */
+    public List<Apartment> list() {
+        return run(new Scan<List<Apartment>>() {
+            List<Apartment> newResult() {
+                return new ArrayList<>();
+            }
+
+            void accept(List<Apartment> result, Apartment apartment) {
+                result.add(apartment);
+            }
+
+            List<Apartment> merge(List<Apartment> left, List<Apartment> right) {
+                left.addAll(right);
+                return left;
+            }
+        });
+    }
+
+    /**
+     * Finds the k apartments with the highest value of the projection among the ones the query keeps.
+     *
+     * @param k   the most apartments to return
+     * @param key the projection to rank by
+     * @return a new list of at most k apartments, highest value first
+     */
+    public List<Apartment> top(int k, ToDoubleFunction<Apartment> key) {
+        return best(k, key, false);
+    }
+
+    /**
+     * Finds the k apartments with the highest value of a whole number projection, such as
+     * {@link #daysLeft(Date)}, among the ones the query keeps.
+     *
+     * @param k   the most apartments to return
+     * @param key the projection to rank by
+     * @return a new list of at most k apartments, highest value first
+     */
+    @SuppressWarnings("overloads") // a projection or an exact method reference picks one, only an untyped lambda needs a cast
+    public List<Apartment> top(int k, ToIntFunction<Apartment> key) {
+        return best(k, apartment -> key.applyAsInt(apartment), false);
+    }
+
+    /**
+     * Finds the k apartments with the lowest value of the projection among the ones the query keeps.
+     *
+     * @param k   the most apartments to return
+     * @param key the projection to rank by
+     * @return a new list of at most k apartments, lowest value first
+     */
+    public List<Apartment> bottom(int k, ToDoubleFunction<Apartment> key) {
+        return best(k, key, true);
+    }
+
+    /**
+     * Finds the k apartments with the lowest value of a whole number projection, such as
+     * {@link #daysLeft(Date)}, among the ones the query keeps.
+     *
+     * @param k   the most apartments to return
+     * @param key the projection to rank by
+     * @return a new list of at most k apartments, lowest value first
+     */
+    @SuppressWarnings("overloads") // a projection or an exact method reference picks one, only an untyped lambda needs a cast
+    public List<Apartment> bottom(int k, ToIntFunction<Apartment> key) {
+        return best(k, apartment -> key.applyAsInt(apartment), true);
+    }
+
+    /**
+     * Computes the count, sum, minimum, maximum and mean of the projection over the apartments the query keeps.
+     *
+     * @param value the projection to aggregate
+     * @return the aggregate
+     */
+    public Aggregate aggregate(ToDoubleFunction<Apartment> value) {
+        return run(new Scan<Aggregate>() {
+            Aggregate newResult() {
+                return new Aggregate();
+            }
+
+            void accept(Aggregate result, Apartment apartment) {
+                result.add(value.applyAsDouble(apartment));
+            }
+
+            Aggregate merge(Aggregate left, Aggregate right) {
+                left.add(right);
+                return left;
+            }
+        });
+    }
+
+    /**
+     * Groups the apartments the query keeps by a key, and aggregates the projection in each group.
+     *
+     * @param key   the projection to group by
+     * @param value the projection to aggregate
+     * @return a new map from each key to the aggregate of its group, in key order
+     */
+    public TreeMap<Integer, Aggregate> groupBy(ToIntFunction<Apartment> key, ToDoubleFunction<Apartment> value) {
+        return new TreeMap<>(run(new Scan<Map<Integer, Aggregate>>() {
+            Map<Integer, Aggregate> newResult() {
+                return new HashMap<>();
+            }
+
+            void accept(Map<Integer, Aggregate> result, Apartment apartment) {
+                int group = key.applyAsInt(apartment);
+                Aggregate aggregate = result.get(group);
+                if (aggregate == null) {
+                    aggregate = new Aggregate();
+                    result.put(group, aggregate);
+                }
+                aggregate.add(value.applyAsDouble(apartment));
+            }
+
+            Map<Integer, Aggregate> merge(Map<Integer, Aggregate> left, Map<Integer, Aggregate> right) {
+                for (Map.Entry<Integer, Aggregate> entry : right.entrySet()) {
+                    Aggregate aggregate = left.putIfAbsent(entry.getKey(), entry.getValue());
+                    if (aggregate != null)
+                        aggregate.add(entry.getValue());
+                }
+                return left;
+            }
+        }));
+    }
+
+    /**
+     * Gets the number of rooms of an apartment.
+     *
+     * @return the projection
+     */
+    public static ToIntFunction<Apartment> noOfRooms() {
+        return Apartment::getNoOfRooms;
+    }
+
+    /**
+     * Gets the price of an apartment.
+     *
+     * @return the projection
+     */
+    public static ToDoubleFunction<Apartment> price() {
+        return Apartment::getPrice;
+    }
+
+    /**
+     * Gets the area of an apartment.
+     *
+     * @return the projection
+     */
+    public static ToDoubleFunction<Apartment> area() {
+        return Apartment::getArea;
+    }
+
+    /**
+     * Gets the price of an apartment divided by its area.
+     *
+     * @return the projection
+     */
+    public static ToDoubleFunction<Apartment> pricePerArea() {
+        return apartment -> apartment.getPrice() / apartment.getArea();
+    }
+
+    /**
+     * Gets the days left in the lease of an apartment on the given date, as {@link Apartment#daysLeft(Date)} does.
+     *
+     * @param today the date to count from
+     * @return the projection
+     */
+    public static ToIntFunction<Apartment> daysLeft(Date today) {
+        int day = today.getEpochDay();
+        return apartment -> {
+            int end = apartment.getRentalEndDate().getEpochDay();
+            return day > end ? -1 : end - day;
+        };
+    }
+
+    /**
+     * Gets the day number of an apartment's rental end date.
+     *
+     * @return the projection
+     */
+    public static ToIntFunction<Apartment> rentalEndDay() {
+        return apartment -> apartment.getRentalEndDate().getEpochDay();
+    }
+
+    /**
+     * Gets the day number of the date of birth of an apartment's tenant.
+     *
+     * @return the projection
+     */
+    public static ToIntFunction<Apartment> tenantBirthDay() {
+        return apartment -> apartment.getTenantDateOfBirth().getEpochDay();
+    }
+
+    /**
+     * Accepts the apartments whose number of rooms is in a range.
+     *
+     * @param min the smallest number of rooms
+     * @param max the largest number of rooms
+     * @return the predicate
+     */
+    public static Predicate<Apartment> roomsBetween(int min, int max) {
+        return apartment -> apartment.getNoOfRooms() >= min && apartment.getNoOfRooms() <= max;
+    }
+
+    /**
+     * Accepts the apartments whose price is in a range.
+     *
+     * @param min the lowest price
+     * @param max the highest price
+     * @return the predicate
+     */
+    public static Predicate<Apartment> priceBetween(double min, double max) {
+        return apartment -> apartment.getPrice() >= min && apartment.getPrice() <= max;
+    }
+
+    /**
+     * Accepts the apartments whose lease ends on one of the given number of days from today on, today included.
+     *
+     * @param today the first day
+     * @param days  the number of days
+     * @return the predicate
+     */
+    public static Predicate<Apartment> endingWithin(Date today, int days) {
+        int first = today.getEpochDay();
+        int last = first + days - 1;
+        return apartment -> {
+            int end = apartment.getRentalEndDate().getEpochDay();
+            return end >= first && end <= last;
+        };
+    }
+
+    /**
+     * Accepts the apartments whose tenant was born before the given date.
+     *
+     * @param date the date
+     * @return the predicate
+     */
+    public static Predicate<Apartment> tenantBornBefore(Date date) {
+        int day = date.getEpochDay();
+        return apartment -> apartment.getTenantDateOfBirth().getEpochDay() < day;
+    }
+
+    /**
+     * Accepts the apartments whose tenant has the given ID.
+     *
+     * @param id the tenant's ID
+     * @return the predicate
+     */
+    public static Predicate<Apartment> tenantId(String id) {
+        return apartment -> apartment.getTenantId().equals(id);
+    }
+
+    // Ranks the kept apartments by the key and keeps the k best
+    private List<Apartment> best(int k, ToDoubleFunction<Apartment> key, boolean lowest) {
+        if (k <= 0)
+            return new ArrayList<>();
+        return run(new Scan<BoundedHeap>() {
+            BoundedHeap newResult() {
+                return new BoundedHeap(k, lowest);
+            }
+
+            void accept(BoundedHeap result, Apartment apartment) {
+                result.offer(key.applyAsDouble(apartment), apartment);
+            }
+
+            BoundedHeap merge(BoundedHeap left, BoundedHeap right) {
+                for (int i = 0; i < right._size; i++)
+                    left.offer(right._keys[i], right._items[i]);
+                return left;
+            }
+        }).toList();
+    }
+
+    // Scans the kept apartments on the pool
+    private <R> R run(Scan<R> scan) {
+        return _pool.invoke(new ScanTask<>(scan, Arrays.spliterator(_apartments), _filter));
+    }
+
+    // What a query computes: a partial result per part of the apartments, and how two partial results merge
+    private abstract static class Scan<R> {
+
+        // An empty partial result
+        abstract R newResult();
+
+        // Adds a kept apartment to a partial result
+        abstract void accept(R result, Apartment apartment);
+
+        // Merges the partial result of the later part into the one of the earlier part
+        abstract R merge(R left, R right);
+    }
+
+    // Splits its part of the apartments while it is large, and scans it when it is small
+    @SuppressWarnings("serial") // never serialized
+    private static class ScanTask<R> extends RecursiveTask<R> {
+        private final Scan<R> _scan;
+        private final Spliterator<Apartment> _part;
+        private final Predicate<Apartment> _filter;
+
+        private ScanTask(Scan<R> scan, Spliterator<Apartment> part, Predicate<Apartment> filter) {
+            _scan = scan;
+            _part = part;
+            _filter = filter;
+        }
+
+        protected R compute() {
+            if (_part.estimateSize() > LEAF_SIZE) {
+                Spliterator<Apartment> first = _part.trySplit();
+                if (first != null) {
+                    ScanTask<R> left = new ScanTask<>(_scan, first, _filter);
+                    left.fork();
+                    R right = new ScanTask<>(_scan, _part, _filter).compute();
+                    return _scan.merge(left.join(), right);
+                }
+            }
+            R result = _scan.newResult();
+            _part.forEachRemaining(apartment -> {
+                if (_filter == null || _filter.test(apartment))
+                    _scan.accept(result, apartment);
+            });
+            return result;
+        }
+    }
+
+    // The k apartments with the best keys seen so far, in a heap whose root is the worst of them
+    private static class BoundedHeap {
+        private final double[] _keys;
+        private final Apartment[] _items;
+        private final boolean _lowest;  // true to keep the lowest keys, false to keep the highest
+        private int _size;
+
+        private BoundedHeap(int k, boolean lowest) {
+            _keys = new double[k];
+            _items = new Apartment[k];
+            _lowest = lowest;
+        }
+
+        // Keeps the apartment if it is among the k best so far
+        private void offer(double key, Apartment item) {
+            if (_size < _keys.length) {
+                int i = _size++;
+                while (i > 0 && worse(key, _keys[(i - 1) / 2])) {
+                    _keys[i] = _keys[(i - 1) / 2];
+                    _items[i] = _items[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                _keys[i] = key;
+                _items[i] = item;
+            } else if (worse(_keys[0], key)) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= _size)
+                        break;
+                    if (child + 1 < _size && worse(_keys[child + 1], _keys[child]))
+                        child++;
+                    if (!worse(_keys[child], key))
+                        break;
+                    _keys[i] = _keys[child];
+                    _items[i] = _items[child];
+                    i = child;
+                }
+                _keys[i] = key;
+                _items[i] = item;
+            }
+        }
+
+        // Checks if one key ranks below another
+        private boolean worse(double key, double other) {
+            return _lowest ? key > other : key < other;
+        }
+
+        // The kept apartments, best first
+        private List<Apartment> toList() {
+            Integer[] order = new Integer[_size];
+            for (int i = 0; i < _size; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> worse(_keys[a], _keys[b]) ? 1 : worse(_keys[b], _keys[a]) ? -1 : 0);
+            List<Apartment> result = new ArrayList<>(_size);
+            for (Integer i : order)
+                result.add(_items[i]);
+            return result;
+        }
+    }
+
+    /**
+     * The count, sum, minimum, maximum and mean of a projection over a group of apartments.
+     */
+    public static final class Aggregate {
+
+        // Instance variables
+        private long _count;
+        private double _sum;
+        private double _min = Double.POSITIVE_INFINITY;
+        private double _max = Double.NEGATIVE_INFINITY;
+
+        private Aggregate() {
+        }
+
+        /**
+         * Gets the number of apartments.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return _count;
+        }
+
+        /**
+         * Gets the sum of the values.
+         *
+         * @return the sum
+         */
+        public double getSum() {
+            return _sum;
+        }
+
+        /**
+         * Gets the smallest value.
+         *
+         * @return the minimum, positive infinity if there are no apartments
+         */
+        public double getMin() {
+            return _min;
+        }
+
+        /**
+         * Gets the largest value.
+         *
+         * @return the maximum, negative infinity if there are no apartments
+         */
+        public double getMax() {
+            return _max;
+        }
+
+        /**
+         * Gets the mean of the values.
+         *
+         * @return the mean, NaN if there are no apartments
+         */
+        public double getMean() {
+            return _count == 0 ? Double.NaN : _sum / _count;
+        }
+
+        /**
+         * Returns the count, mean, minimum and maximum.
+         *
+         * @return the string representation
+         */
+        public String toString() {
+            return "count " + _count + ", mean " + getMean() + ", min " + _min + ", max " + _max;
+        }
+
+        // Adds one value
+        private void add(double value) {
+            _count++;
+            _sum += value;
+            _min = Math.min(_min, value);
+            _max = Math.max(_max, value);
+        }
+
+        // Adds the values of another aggregate
+        private void add(Aggregate other) {
+            _count += other._count;
+            _sum += other._sum;
+            _min = Math.min(_min, other._min);
+            _max = Math.max(_max, other._max);
+        }
+    }
+}
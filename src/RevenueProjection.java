@@ -0,0 +1,231 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The RevenueProjection class projects the rent collected in each month of a fixed
+ * range of months, from the price and the rental period of its apartments.
+ * A lease pays its price for every month from the month it starts in up to, but not
+ * including, the month it ends in, and for at least one month, so a one year lease
+ * pays for twelve months.
+ * The monthly totals are kept in two Fenwick trees that together allow adding a price
+ * to a range of months and summing a range of months, each in logarithmic time. The
+ * projection observes its apartments, so a change of price or dates, extendRentalPeriod
+ * and changeTenant move only the lease that changed. The totals are sums of doubles,
+ * so after many changes they can differ from a fresh sum by rounding.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class RevenueProjection implements ApartmentObserver {
+
+    // Constants
+    private static final int MONTHS_PER_YEAR = 12;
+
+    // Instance variables
+    private final int _firstMonth;  // month index of the first projected month
+    private final int _months;      // number of projected months
+    private final double[] _sums;   // Fenwick tree of the price added from each month on
+    private final double[] _weighted; // Fenwick tree of the same prices times the month before
+    private final Map<Apartment, Lease> _leases = new IdentityHashMap<>();
+
+    /**
+     * Creates an empty projection of the months from the month of the first date to the month of the last.
+     *
+     * @param first a date in the first projected month
+     * @param last  a date in the last projected month
+     * @throws IllegalArgumentException if the last month is before the first
+     */
+    public RevenueProjection(Date first, Date last) {
+        _firstMonth = monthIndex(first);
+        _months = monthIndex(last) - _firstMonth + 1;
+        if (_months <= 0)
+            throw new IllegalArgumentException("Last month " + last + " is before first month " + first);
+        _sums = new double[_months + 1];
+        _weighted = new double[_months + 1];
+    }
+
+    /**
+     * Adds the revenue of the apartment's lease to the projection.
+     *
+     * @param apartment the apartment to add
+     * @return true if the apartment was added, false if it was already in the projection
+     */
+    public boolean add(Apartment apartment) {
+        synchronized (this) {
+            if (_leases.containsKey(apartment))
+                return false;
+            Lease lease = new Lease(apartment);
+            _leases.put(apartment, lease);
+            apply(lease, 1);
+        }
+        apartment.addObserver(this); // outside the lock, a thread changing the apartment may hold a lock on it
+        afterChange(apartment);      // picks up a change made before the projection was observing
+        return true;
+    }
+
+    /**
+     * Takes the revenue of the apartment's lease out of the projection.
+     *
+     * @param apartment the apartment to remove
+     * @return true if the apartment was removed, false if it was not in the projection
+     */
+    public boolean remove(Apartment apartment) {
+        synchronized (this) {
+            Lease lease = _leases.remove(apartment);
+            if (lease == null)
+                return false;
+            apply(lease, -1);
+        }
+        apartment.removeObserver(this);
+        return true;
+    }
+
+    /**
+     * Gets the number of apartments in the projection.
+     *
+     * @return the number of apartments
+     */
+    public synchronized int size() {
+        return _leases.size();
+    }
+
+    /**
+     * Gets the projected revenue of the months from the month of one date to the month of another, both included.
+     * Months outside the projected range count as zero.
+     *
+     * @param from a date in the first month
+     * @param to   a date in the last month
+     * @return the projected revenue, 0 if from is in a later month than to
+     */
+    public synchronized double revenueBetween(Date from, Date to) {
+        int first = Math.max(monthIndex(from) - _firstMonth, 0);
+        int last = Math.min(monthIndex(to) - _firstMonth, _months - 1);
+        if (first > last)
+            return 0;
+        return prefixSum(last + 1) - prefixSum(first);
+    }
+
+    /**
+     * Gets the projected revenue of every month in the range.
+     *
+     * @return an array whose element i is the revenue of the i-th projected month
+     */
+    public synchronized double[] monthlyRevenue() {
+        double[] revenue = new double[_months];
+        double previous = 0;
+        for (int i = 0; i < _months; i++) {
+            double sum = prefixSum(i + 1);
+            revenue[i] = sum - previous;
+            previous = sum;
+        }
+        return revenue;
+    }
+
+    /**
+     * Computes how the projected revenue of a range of months would change if the apartment
+     * took a new tenant through changeTenant, without changing anything. The rule on the
+     * price and the days left is checked, the rule on the tenant's age is not.
+     *
+     * @param apartment the apartment whose tenant would change
+     * @param startDate the new rental start date
+     * @param newPrice  the new price
+     * @param from      a date in the first month of the range
+     * @param to        a date in the last month of the range
+     * @return the change in revenue, 0 if changeTenant would refuse the price or the date
+     */
+    public double tenantChangeDelta(Apartment apartment, Date startDate, double newPrice, Date from, Date to) {
+        if (apartment.getPrice() > newPrice || apartment.daysLeft(startDate) > Apartment.MAX_RENT_DAYS_LEFT)
+            return 0;
+        int first = monthIndex(from);
+        int last = monthIndex(to);
+        Lease current = new Lease(apartment);
+        int start = monthIndex(startDate);
+        int end = Math.max(monthIndex(startDate.addYearsToDate(1)) - 1, start);
+        return overlap(start, end, first, last) * newPrice - overlap(current._first, current._last, first, last) * current._price;
+    }
+
+    /**
+     * Gets the month index of a date, the number of months since the start of the counting of years.
+     *
+     * @param date the date
+     * @return the month index
+     */
+    public static int monthIndex(Date date) {
+        return date.getYear() * MONTHS_PER_YEAR + date.getMonth() - 1;
+    }
+
+    /**
+     * Does nothing, the lease is moved once the change is done.
+     *
+     * @param apartment the apartment about to change
+     */
+    public void beforeChange(Apartment apartment) {
+    }
+
+    /**
+     * Replaces the revenue of the lease if its price or its months changed.
+     *
+     * @param apartment the apartment that changed
+     */
+    public synchronized void afterChange(Apartment apartment) {
+        Lease lease = _leases.get(apartment);
+        if (lease == null)
+            return;
+        Lease changed = new Lease(apartment);
+        if (changed._price == lease._price && changed._first == lease._first && changed._last == lease._last)
+            return;
+        apply(lease, -1);
+        apply(changed, 1);
+        _leases.put(apartment, changed);
+    }
+
+    // Adds or takes away the lease's price in each of its months inside the projected range
+    private void apply(Lease lease, int sign) {
+        int first = Math.max(lease._first - _firstMonth, 0);
+        int last = Math.min(lease._last - _firstMonth, _months - 1);
+        if (first > last)
+            return;
+        double price = sign * lease._price;
+        add(first + 1, price);
+        add(last + 2, -price);
+    }
+
+    // Adds the value to every month from the 1-based position on
+    private void add(int position, double value) {
+        double weighted = value * (position - 1);
+        for (int i = position; i <= _months; i += i & -i) {
+            _sums[i] += value;
+            _weighted[i] += weighted;
+        }
+    }
+
+    // Sums the revenue of the first count months
+    private double prefixSum(int count) {
+        double sum = 0;
+        double weighted = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += _sums[i];
+            weighted += _weighted[i];
+        }
+        return sum * count - weighted;
+    }
+
+    // Number of months two ranges of months have in common
+    private static int overlap(int first, int last, int from, int to) {
+        return Math.max(Math.min(last, to) - Math.max(first, from) + 1, 0);
+    }
+
+    // The months and the price a lease contributes
+    private static class Lease {
+        private final int _first;   // month index of the first paid month
+        private final int _last;    // month index of the last paid month
+        private final double _price;
+
+        private Lease(Apartment apartment) {
+            _first = monthIndex(apartment.getRentalStartDate());
+            _last = Math.max(monthIndex(apartment.getRentalEndDate()) - 1, _first);
+            _price = apartment.getPrice();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The TenantChangeBatch class applies many changeTenant requests at once.
+ * Request i asks to give apartments[i] to newPeople[i] from startDates[i] at newPrices[i].
+ * The requests are grouped by apartment and the groups are evaluated in parallel on a
+ * fork/join pool. Inside a group the requests are tried in their order in the batch,
+ * each one against the state left by the one before, so the outcome is the same as
+ * calling changeTenant in a loop: the first eligible request wins, and the apartment's
+ * new lease usually makes the later ones ineligible. A group holds the apartment's lock
+ * from {@link ApartmentLocks}, so its changes are atomic with respect to other batches and
+ * to every other writer that takes the same lock, such as ApartmentServer. A set method
+ * called directly on the apartment does not take it, and may interleave with a group.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class TenantChangeBatch {
+
+    // Constants
+    private static final int GROUPS_PER_TASK = 256; // Apartments handled by one task before it stops splitting
+    private static final int BITS_PER_WORD = 64;
+
+    /**
+     * Applies the requests on the common fork/join pool.
+     *
+     * @param apartments the apartment of each request
+     * @param startDates the new rental start date of each request
+     * @param newPeople  the new tenant of each request
+     * @param newPrices  the new price of each request
+     * @return a bitmap with bit i set if request i changed the tenant
+     */
+    public static BitSet apply(Apartment[] apartments, Date[] startDates, Person[] newPeople, double[] newPrices) {
+        return apply(apartments, startDates, newPeople, newPrices, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Applies the requests on the given fork/join pool.
+     *
+     * @param apartments the apartment of each request
+     * @param startDates the new rental start date of each request
+     * @param newPeople  the new tenant of each request
+     * @param newPrices  the new price of each request
+     * @param pool       the pool that runs the evaluation
+     * @return a bitmap with bit i set if request i changed the tenant
+     */
+    public static BitSet apply(Apartment[] apartments, Date[] startDates, Person[] newPeople, double[] newPrices, ForkJoinPool pool) {
+        int count = apartments.length;
+        if (startDates.length != count || newPeople.length != count || newPrices.length != count)
+            throw new IllegalArgumentException("All the request arrays must have the same length");
+        int[][] groups = groupByApartment(apartments);
+        AtomicLongArray accepted = new AtomicLongArray((count + BITS_PER_WORD - 1) / BITS_PER_WORD);
+        pool.invoke(new GroupTask(groups, 0, groups.length, apartments, startDates, newPeople, newPrices, accepted));
+        long[] words = new long[accepted.length()];
+        for (int i = 0; i < words.length; i++)
+            words[i] = accepted.get(i);
+        return BitSet.valueOf(words);
+    }
+
+    // Collects the request indices of each apartment, in batch order
+    private static int[][] groupByApartment(Apartment[] apartments) {
+        Map<Apartment, List<Integer>> byApartment = new IdentityHashMap<>();
+        List<List<Integer>> order = new ArrayList<>();
+        for (int i = 0; i < apartments.length; i++) {
+            List<Integer> group = byApartment.get(apartments[i]);
+            if (group == null) {
+                group = new ArrayList<>();
+                byApartment.put(apartments[i], group);
+                order.add(group);
+            }
+            group.add(i);
+        }
+        int[][] groups = new int[order.size()][];
+        for (int g = 0; g < groups.length; g++) {
+            List<Integer> group = order.get(g);
+            groups[g] = new int[group.size()];
+            for (int j = 0; j < groups[g].length; j++)
+                groups[g][j] = group.get(j);
+        }
+        return groups;
+    }
+
+    // Evaluates a range of apartment groups, splitting it while it is large
+    @SuppressWarnings("serial") // never serialized
+    private static class GroupTask extends RecursiveAction {
+        private final int[][] _groups;
+        private final int _from;
+        private final int _to;
+        private final Apartment[] _apartments;
+        private final Date[] _startDates;
+        private final Person[] _newPeople;
+        private final double[] _newPrices;
+        private final AtomicLongArray _accepted;
+
+        private GroupTask(int[][] groups, int from, int to, Apartment[] apartments, Date[] startDates,
+                          Person[] newPeople, double[] newPrices, AtomicLongArray accepted) {
+            _groups = groups;
+            _from = from;
+            _to = to;
+            _apartments = apartments;
+            _startDates = startDates;
+            _newPeople = newPeople;
+            _newPrices = newPrices;
+            _accepted = accepted;
+        }
+
+        protected void compute() {
+            if (_to - _from > GROUPS_PER_TASK) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new GroupTask(_groups, _from, middle, _apartments, _startDates, _newPeople, _newPrices, _accepted),
+                        new GroupTask(_groups, middle, _to, _apartments, _startDates, _newPeople, _newPrices, _accepted));
+                return;
+            }
+            for (int g = _from; g < _to; g++) {
+                int[] group = _groups[g];
+                Apartment apartment = _apartments[group[0]];
+                ReentrantLock lock = ApartmentLocks.lockOf(apartment);
+                lock.lock();
+                try {
+                    for (int i : group)
+                        if (apartment.changeTenant(_startDates[i], _newPeople[i], _newPrices[i]))
+                            setBit(i);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        // Marks request i as accepted
+        private void setBit(int i) {
+            long bit = 1L << (i % BITS_PER_WORD);
+            _accepted.getAndUpdate(i / BITS_PER_WORD, word -> word | bit);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The TenantDirectory class holds prospective tenants, at most one per ID, and finds
+ * the ones an apartment would accept in {@link Apartment#changeTenant(Date, Person, double)}:
+ * the tenants born after the apartment's current tenant. The people are indexed by ID
+ * and by date of birth, so the first eligible tenant is found in logarithmic time.
+ * The directory keeps its own copies of the people added to it, so changing a Person
+ * after adding it does not affect the directory.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public class TenantDirectory {
+
+    // Instance variables
+    private final Map<String, Person> _byId = new HashMap<>();
+    private final TreeMap<Integer, List<Person>> _byBirth = new TreeMap<>(); // keyed by epoch day, oldest first
+
+    /**
+     * Adds a tenant to the directory.
+     *
+     * @param person the tenant to add
+     * @return true if the tenant was added, false if a tenant with the same ID is already in the directory
+     */
+    public synchronized boolean add(Person person) {
+        if (_byId.containsKey(person.getId()))
+            return false;
+        Person copy = new Person(person);
+        _byId.put(copy.getId(), copy);
+        _byBirth.computeIfAbsent(birthDay(copy), key -> new ArrayList<>()).add(copy);
+        return true;
+    }
+
+    /**
+     * Removes the tenant with the given ID.
+     *
+     * @param id the tenant's ID
+     * @return true if a tenant was removed
+     */
+    public synchronized boolean remove(String id) {
+        Person person = _byId.remove(id);
+        if (person == null)
+            return false;
+        List<Person> bucket = _byBirth.get(birthDay(person));
+        bucket.remove(person);
+        if (bucket.isEmpty())
+            _byBirth.remove(birthDay(person));
+        return true;
+    }
+
+    /**
+     * Finds the tenant with the given ID.
+     *
+     * @param id the tenant's ID
+     * @return a copy of the tenant, or null if there is none
+     */
+    public synchronized Person get(String id) {
+        Person person = _byId.get(id);
+        return person == null ? null : new Person(person);
+    }
+
+    /**
+     * Checks if a tenant with the given ID is in the directory.
+     *
+     * @param id the tenant's ID
+     * @return true if the directory holds a tenant with the ID
+     */
+    public synchronized boolean contains(String id) {
+        return _byId.containsKey(id);
+    }
+
+    /**
+     * Gets the number of tenants in the directory.
+     *
+     * @return the number of tenants
+     */
+    public synchronized int size() {
+        return _byId.size();
+    }
+
+    /**
+     * Finds the tenants the apartment would accept by age, that is the tenants born after its current tenant.
+     *
+     * @param apartment the apartment to match
+     * @return a new list of copies of the eligible tenants, oldest first
+     */
+    public synchronized List<Person> eligibleFor(Apartment apartment) {
+        List<Person> result = new ArrayList<>();
+        for (List<Person> bucket : _byBirth.tailMap(apartment.getTenantDateOfBirth().getEpochDay(), false).values())
+            for (Person person : bucket)
+                result.add(new Person(person));
+        return result;
+    }
+
+    /**
+     * Finds the oldest tenant the apartment would accept by age.
+     *
+     * @param apartment the apartment to match
+     * @return a copy of the oldest tenant born after the apartment's current tenant, or null if there is none
+     */
+    public synchronized Person firstEligibleFor(Apartment apartment) {
+        Map.Entry<Integer, List<Person>> entry = _byBirth.higherEntry(apartment.getTenantDateOfBirth().getEpochDay());
+        return entry == null ? null : new Person(entry.getValue().get(0));
+    }
+
+    /**
+     * Assigns tenants from the directory to apartments, each tenant to at most one apartment,
+     * so that as many apartments as possible get a tenant they would accept by age.
+     * Only the apartments whose lease has at most {@link Apartment#MAX_RENT_DAYS_LEFT} days
+     * left on the start date are matched. The apartments whose current tenant is youngest
+     * accept the fewest tenants, so they are served first, each with the oldest tenant it
+     * accepts; this leaves the youngest tenants for the apartments that need them.
+     * Neither the apartments nor the directory are changed.
+     *
+     * @param apartments the apartments to match
+     * @param startDate  the date the new leases would start
+     * @return a new map from each matched apartment to a copy of its tenant
+     */
+    public synchronized Map<Apartment, Person> match(Collection<Apartment> apartments, Date startDate) {
+        List<Apartment> open = new ArrayList<>();
+        for (Apartment apartment : apartments)
+            if (apartment.daysLeft(startDate) <= Apartment.MAX_RENT_DAYS_LEFT)
+                open.add(apartment);
+        open.sort((a, b) -> Integer.compare(b.getTenantDateOfBirth().getEpochDay(), a.getTenantDateOfBirth().getEpochDay()));
+
+        TreeMap<Integer, ArrayDeque<Person>> free = new TreeMap<>();
+        for (Map.Entry<Integer, List<Person>> entry : _byBirth.entrySet())
+            free.put(entry.getKey(), new ArrayDeque<>(entry.getValue()));
+        Map<Apartment, Person> result = new IdentityHashMap<>();
+        for (Apartment apartment : open) {
+            Map.Entry<Integer, ArrayDeque<Person>> entry = free.higherEntry(apartment.getTenantDateOfBirth().getEpochDay());
+            if (entry == null)
+                continue; // no free tenant is young enough for this one
+            result.put(apartment, new Person(entry.getValue().poll()));
+            if (entry.getValue().isEmpty())
+                free.remove(entry.getKey());
+        }
+        return result;
+    }
+
+    // The epoch day of the person's date of birth
+    private static int birthDay(Person person) {
+        return person.getDateOfBirth().getEpochDay();
+    }
+}
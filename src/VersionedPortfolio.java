@@ -0,0 +1,344 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * The VersionedPortfolio class holds a portfolio of apartments as a series of immutable
+ * versions, so a reader can take a consistent snapshot while writers go on changing it.
+ * The apartments are ApartmentStates, addressed by the index add gave them.
+ * <p>
+ * A version is a tree in which every node has up to 32 children and the leaves hold
+ * the states, so a million apartments are four levels deep. A change copies only the
+ * nodes on the path from the root to the changed apartment, four arrays of 32 references
+ * for a million apartments, and shares every other node with the version before it.
+ * Taking a snapshot is a single read of the current version, with no copying at all.
+ * A version no reader holds any more is reclaimed by the garbage collector, along with
+ * the nodes no newer version shares.
+ * <p>
+ * Writers replace the current version with a compare-and-set, as ConcurrentApartment
+ * does with its state, and retry if another writer got there first. Writers of different
+ * apartments therefore contend on the one current version; the portfolio suits many
+ * readers and a moderate rate of changes.
+ * <p>
+ * A portfolio created from apartments follows them: it observes each one, and after any
+ * change to an apartment, through its set methods, changeTenant or extendRentalPeriod,
+ * replaces the apartment's state with a new snapshot of it in a new version. Live updates
+ * can therefore keep going to the Apartments while readers take snapshots here. The
+ * snapshot is read on the thread that changed the apartment, so it is consistent when the
+ * writers of an apartment are serialized, as with {@link ApartmentLocks}. A state changed
+ * through the portfolio's own methods is replaced by the next change to its apartment.
+ * {@link #close()} stops following the apartments.
+ *
+ * @author Daniel Shimon
+ * @version (Maman 12 )
+ */
+
+public final class VersionedPortfolio implements ApartmentObserver {
+
+    // Constants
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;     // Children of a node
+    private static final int MASK = WIDTH - 1;
+
+    // Instance variables
+    private final AtomicReference<Version> _current;
+    private final Map<Apartment, Integer> _indexes = new IdentityHashMap<>(); // followed apartments, fixed once created
+
+    /**
+     * Creates an empty portfolio.
+     */
+    public VersionedPortfolio() {
+        _current = new AtomicReference<>(new Version(new Object[WIDTH], 0, 0, 0));
+    }
+
+    /**
+     * Creates a portfolio holding snapshots of the given apartments, at indexes in the order
+     * of the collection, and follows the apartments from then on.
+     *
+     * @param apartments the apartments to take snapshots of and follow
+     * @throws IllegalArgumentException if an apartment is in the collection twice
+     */
+    public VersionedPortfolio(Collection<Apartment> apartments) {
+        List<Object[]> nodes = new ArrayList<>(apartments.size() / WIDTH + 1);
+        Object[] leaf = null;
+        int count = 0;
+        for (Apartment apartment : apartments) {
+            if (_indexes.put(apartment, count) != null)
+                throw new IllegalArgumentException("Apartment " + count + " is also at an earlier index");
+            if ((count & MASK) == 0) {
+                leaf = new Object[WIDTH];
+                nodes.add(leaf);
+            }
+            leaf[count & MASK] = new ApartmentState(apartment);
+            count++;
+        }
+        int shift = 0;
+        while (nodes.size() > 1) {
+            List<Object[]> parents = new ArrayList<>(nodes.size() / WIDTH + 1);
+            for (int i = 0; i < nodes.size(); i++) {
+                if ((i & MASK) == 0)
+                    parents.add(new Object[WIDTH]);
+                parents.get(parents.size() - 1)[i & MASK] = nodes.get(i);
+            }
+            nodes = parents;
+            shift += BITS;
+        }
+        _current = new AtomicReference<>(new Version(nodes.isEmpty() ? new Object[WIDTH] : nodes.get(0), shift, count, 0));
+        for (Apartment apartment : apartments) {
+            apartment.addObserver(this);
+            afterChange(apartment); // picks up a change made before the portfolio was observing
+        }
+    }
+
+    /**
+     * Stops following the apartments the portfolio was created from. Their states stay as
+     * they were last seen.
+     */
+    public void close() {
+        for (Apartment apartment : _indexes.keySet())
+            apartment.removeObserver(this);
+    }
+
+    /**
+     * Does nothing, the apartment's state is replaced once the change is done.
+     *
+     * @param apartment the apartment about to change
+     */
+    public void beforeChange(Apartment apartment) {
+    }
+
+    /**
+     * Replaces the state of a followed apartment with a new snapshot of it, in a new version.
+     *
+     * @param apartment the apartment that changed
+     */
+    public void afterChange(Apartment apartment) {
+        Integer index = _indexes.get(apartment);
+        if (index != null) // read again on every retry, so a later change is never overwritten by an older snapshot
+            update(index, state -> new ApartmentState(apartment));
+    }
+
+    /**
+     * Takes a snapshot of the portfolio: the current version, which never changes.
+     *
+     * @return the current version
+     */
+    public Version snapshot() {
+        return _current.get();
+    }
+
+    /**
+     * Gets the number of apartments in the current version.
+     *
+     * @return the number of apartments
+     */
+    public int size() {
+        return _current.get().size();
+    }
+
+    /**
+     * Gets the state of an apartment in the current version.
+     *
+     * @param index the index of the apartment
+     * @return the state
+     */
+    public ApartmentState get(int index) {
+        return _current.get().get(index);
+    }
+
+    /**
+     * Adds an apartment at the next index, in a new version.
+     *
+     * @param state the state of the apartment
+     * @return the index of the apartment
+     */
+    public int add(ApartmentState state) {
+        while (true) {
+            Version current = _current.get();
+            if (_current.compareAndSet(current, current.with(current._size, state)))
+                return current._size;
+        }
+    }
+
+    /**
+     * Replaces the state of an apartment, in a new version.
+     *
+     * @param index the index of the apartment
+     * @param state the new state
+     */
+    public void set(int index, ApartmentState state) {
+        update(index, old -> state);
+    }
+
+    /**
+     * Changes the state of an apartment, in a new version. The change may be applied more
+     * than once if other writers change the portfolio at the same time, so it must have no
+     * side effects.
+     *
+     * @param index  the index of the apartment
+     * @param change gives the new state from the current one, or null to leave the apartment as it is
+     * @return the new state, or null if the change gave null
+     */
+    public ApartmentState update(int index, UnaryOperator<ApartmentState> change) {
+        while (true) {
+            Version current = _current.get();
+            ApartmentState changed = change.apply(current.get(index));
+            if (changed == null)
+                return null;
+            if (_current.compareAndSet(current, current.with(index, changed)))
+                return changed;
+        }
+    }
+
+    /**
+     * Sets the price of an apartment, as in {@link Apartment#setPrice(double)}.
+     *
+     * @param index      the index of the apartment
+     * @param priceToSet the new price
+     */
+    public void setPrice(int index, double priceToSet) {
+        update(index, state -> state.withPrice(priceToSet));
+    }
+
+    /**
+     * Extends the rental period of an apartment, as in {@link Apartment#extendRentalPeriod(int)}.
+     *
+     * @param index      the index of the apartment
+     * @param extendYear the number of years to extend the rental period
+     */
+    public void extendRentalPeriod(int index, int extendYear) {
+        update(index, state -> state.withExtendedRentalPeriod(extendYear));
+    }
+
+    /**
+     * Changes the tenant of an apartment, as in {@link Apartment#changeTenant(Date, Person, double)}.
+     *
+     * @param index     the index of the apartment
+     * @param startDate the new rental start date
+     * @param newPerson the new tenant
+     * @param newPrice  the new rental price
+     * @return true if the change was successful, false otherwise
+     */
+    public boolean changeTenant(int index, Date startDate, Person newPerson, double newPrice) {
+        Date start = Date.valueOf(startDate);
+        Person person = new Person(newPerson);
+        return update(index, state -> state.withTenantChange(start, person, newPrice)) != null;
+    }
+
+    /**
+     * One version of the portfolio. A version never changes, so it can be read from any
+     * thread without locking, for as long as the reader keeps it.
+     */
+    public static final class Version {
+
+        // Instance variables
+        private final Object[] _root;   // nodes are Object[WIDTH], the leaves hold ApartmentStates
+        private final int _shift;       // BITS times the number of levels above the leaves
+        private final int _size;
+        private final long _number;
+
+        private Version(Object[] root, int shift, int size, long number) {
+            _root = root;
+            _shift = shift;
+            _size = size;
+            _number = number;
+        }
+
+        /**
+         * Gets the number of the version, counted from 0 for the portfolio as it was created.
+         *
+         * @return the version number
+         */
+        public long getNumber() {
+            return _number;
+        }
+
+        /**
+         * Gets the number of apartments in the version.
+         *
+         * @return the number of apartments
+         */
+        public int size() {
+            return _size;
+        }
+
+        /**
+         * Gets the state of an apartment in the version.
+         *
+         * @param index the index of the apartment
+         * @return the state
+         * @throws IndexOutOfBoundsException if there is no apartment at the index
+         */
+        public ApartmentState get(int index) {
+            if (index < 0 || index >= _size)
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + _size);
+            Object[] node = _root;
+            for (int shift = _shift; shift > 0; shift -= BITS)
+                node = (Object[]) node[(index >>> shift) & MASK];
+            return (ApartmentState) node[index & MASK];
+        }
+
+        /**
+         * Passes the state of every apartment to the action, in index order.
+         *
+         * @param action the action
+         */
+        public void forEach(Consumer<ApartmentState> action) {
+            forEach(_root, _shift, 0, action);
+        }
+
+        /**
+         * Copies the states of the apartments into a new list, in index order.
+         *
+         * @return the list of states
+         */
+        public List<ApartmentState> toList() {
+            List<ApartmentState> states = new ArrayList<>(_size);
+            forEach(states::add);
+            return states;
+        }
+
+        // Passes the states under a node, whose first apartment has the given index
+        private void forEach(Object[] node, int shift, int first, Consumer<ApartmentState> action) {
+            for (int i = 0; i < WIDTH; i++) {
+                int index = first + (i << shift);
+                if (index >= _size)
+                    return;
+                if (shift == 0)
+                    action.accept((ApartmentState) node[i]);
+                else
+                    forEach((Object[]) node[i], shift - BITS, index, action);
+            }
+        }
+
+        // The next version, with the state at the index, which may be the index after the last
+        private Version with(int index, ApartmentState state) {
+            if (index < 0 || index > _size)
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + _size);
+            Object[] root = _root;
+            int shift = _shift;
+            if (index >>> shift >= WIDTH) {    // the tree is full, grow a level on top
+                root = new Object[WIDTH];
+                root[0] = _root;
+                shift += BITS;
+            }
+            return new Version(copyPath(root, shift, index, state), shift, Math.max(_size, index + 1), _number + 1);
+        }
+
+        // Copies the nodes from this one down to the leaf of the index, creating the missing ones
+        private static Object[] copyPath(Object[] node, int shift, int index, ApartmentState state) {
+            Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+            int slot = (index >>> shift) & MASK;
+            if (shift == 0)
+                copy[slot] = state;
+            else
+                copy[slot] = copyPath((Object[]) copy[slot], shift - BITS, index, state);
+            return copy;
+        }
+    }
+}